@@ -0,0 +1,173 @@
+package com.sentaroh.jcifs.bench;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Warm-up and measurement loop of the benchmarks. Each iteration calls the operation until the iteration time
+ * has passed and records the time per operation; the result is the mean of the measurement iterations and the
+ * 99.9% confidence interval, like the average time mode of JMH.
+ */
+public class JcifsBenchmarkRunner {
+
+    /**
+     * One benchmark, called repeatedly by the runner
+     */
+    public static abstract class Operation {
+        /**
+         * Called once before the warm-up
+         */
+        public void setup() throws Exception {
+        }
+
+        /**
+         * @return Number of bytes moved by this call, 0 for metadata operations
+         */
+        public abstract long run() throws Exception;
+
+        /**
+         * Called once after the measurement
+         */
+        public void tearDown() throws Exception {
+        }
+    }
+
+    public static class Result {
+        public final String level;
+        public final String name;
+        public final String param;
+        public final double meanUsPerOp;
+        public final double errorUsPerOp;
+        public final double mbPerSec;
+        public final long operations;
+
+        Result(String level, String name, String param, double mean, double error, double mb_per_sec, long operations) {
+            this.level = level;
+            this.name = name;
+            this.param = param;
+            this.meanUsPerOp = mean;
+            this.errorUsPerOp = error;
+            this.mbPerSec = mb_per_sec;
+            this.operations = operations;
+        }
+    }
+
+    // Student's t for 99.9% two-sided with n-1 degrees of freedom, n = 2..10, larger n use the normal value
+    final static private double[] T_999 = new double[]{0, 0, 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781};
+    final static private double Z_999 = 3.291;
+
+    private final int mWarmupIterations;
+    private final int mMeasurementIterations;
+    private final long mIterationNanos;
+    private final List<Result> mResults = new ArrayList<Result>();
+
+    public JcifsBenchmarkRunner(int warmup_iterations, int measurement_iterations, long iteration_millis) {
+        mWarmupIterations = warmup_iterations;
+        mMeasurementIterations = measurement_iterations;
+        mIterationNanos = iteration_millis * 1000000L;
+    }
+
+    public Result run(String level, String name, String param, Operation op) throws Exception {
+        op.setup();
+        try {
+            for (int i = 0; i < mWarmupIterations; i++) iteration(op);
+            double[] us_per_op = new double[mMeasurementIterations];
+            long total_ops = 0, total_bytes = 0, total_nanos = 0;
+            for (int i = 0; i < mMeasurementIterations; i++) {
+                long[] it = iteration(op);
+                us_per_op[i] = it[2] / 1000.0d / it[0];
+                total_ops += it[0];
+                total_bytes += it[1];
+                total_nanos += it[2];
+            }
+            double mean = mean(us_per_op);
+            double error = error(us_per_op, mean);
+            double mb_per_sec = total_bytes == 0 ? 0 : (total_bytes / 1048576.0d) / (total_nanos / 1000000000.0d);
+            Result result = new Result(level, name, param, mean, error, mb_per_sec, total_ops);
+            mResults.add(result);
+            return result;
+        } finally {
+            op.tearDown();
+        }
+    }
+
+    /**
+     * @return operations, bytes and elapsed nanoseconds of the iteration
+     */
+    private long[] iteration(Operation op) throws Exception {
+        long ops = 0, bytes = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            bytes += op.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < mIterationNanos);
+        return new long[]{ops, bytes, elapsed};
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) sum += v;
+        return sum / values.length;
+    }
+
+    private static double error(double[] values, double mean) {
+        int n = values.length;
+        if (n < 2) return Double.NaN;
+        double sq = 0;
+        for (double v : values) sq += (v - mean) * (v - mean);
+        double stdev = Math.sqrt(sq / (n - 1));
+        double t = n < T_999.length ? T_999[n] : Z_999;
+        return t * stdev / Math.sqrt(n);
+    }
+
+    public List<Result> getResults() {
+        return mResults;
+    }
+
+    public static void printHeader(PrintStream out) {
+        out.println(String.format(Locale.US, "%-8s %-14s %-10s %14s %12s %10s %10s",
+                "Level", "Benchmark", "Param", "us/op", "Error", "MB/s", "Ops"));
+    }
+
+    public static void print(PrintStream out, Result r) {
+        out.println(String.format(Locale.US, "%-8s %-14s %-10s %14.3f %12.3f %10s %10d",
+                r.level, r.name, r.param, r.meanUsPerOp, r.errorUsPerOp,
+                r.mbPerSec == 0 ? "-" : String.format(Locale.US, "%.2f", r.mbPerSec), r.operations));
+    }
+
+    public static void printCsv(PrintStream out, List<Result> results) {
+        out.println("level,benchmark,param,us_per_op,error,mb_per_sec,ops");
+        for (Result r : results) {
+            out.println(String.format(Locale.US, "%s,%s,%s,%.3f,%.3f,%.2f,%d",
+                    r.level, r.name, r.param, r.meanUsPerOp, r.errorUsPerOp, r.mbPerSec, r.operations));
+        }
+    }
+
+}
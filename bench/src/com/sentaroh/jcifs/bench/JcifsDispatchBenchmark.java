@@ -0,0 +1,100 @@
+package com.sentaroh.jcifs.bench;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sentaroh.jcifs.JcifsAuth;
+import com.sentaroh.jcifs.JcifsFile;
+
+/**
+ * Per-call overhead of the SMB level dispatch in JcifsFile. getServer() and getShare() are answered from
+ * the URL of the SmbFile without a request, so the time per call is the dispatch plus a field read.
+ * "SMBxxx" runs the files of that level only, which is the normal case of an application that uses one level.
+ * "mixed" cycles through the files of all levels in one loop, the worst case for the dispatch.
+ * Run each scenario in its own JVM, the JIT compiles the call site for the levels it has seen.
+ *
+ * Usage: JcifsDispatchBenchmark SMB1|SMB201|SMB211|SMB212|SMB214|mixed [iterations per round] [rounds]
+ */
+public class JcifsDispatchBenchmark {
+
+    final static private String URL = "smb://bench-server/bench-share/dir/file.txt";
+    final static private int FILES_PER_LEVEL = 64;
+
+    final static private int[] LEVELS = new int[]{JcifsFile.JCIFS_FILE_SMB1, JcifsFile.JCIFS_FILE_SMB201,
+            JcifsFile.JCIFS_FILE_SMB211, JcifsFile.JCIFS_FILE_SMB212, JcifsFile.JCIFS_FILE_SMB214};
+    final static private String[] LEVEL_NAMES = new String[]{"SMB1", "SMB201", "SMB211", "SMB212", "SMB214"};
+
+    private static final JcifsAuth[] mAuth = new JcifsAuth[LEVELS.length];
+
+    private static volatile int sink = 0;
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "mixed";
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<JcifsFile> files = new ArrayList<JcifsFile>();
+        for (int j = 0; j < FILES_PER_LEVEL; j++) {
+            for (int i = 0; i < LEVELS.length; i++) {
+                if (!scenario.equals("mixed") && !scenario.equals(LEVEL_NAMES[i])) continue;
+                files.add(new JcifsFile(URL, getAuth(i)));
+            }
+        }
+        if (files.isEmpty()) throw new IllegalArgumentException("Unknown scenario " + scenario);
+        JcifsFile[] file_array = files.toArray(new JcifsFile[files.size()]);
+
+        run(file_array, iterations);
+        report(scenario, file_array, iterations, rounds);
+    }
+
+    private static JcifsAuth getAuth(int i) {
+        if (mAuth[i] == null) mAuth[i] = new JcifsAuth(LEVELS[i], null, "bench", "bench");
+        return mAuth[i];
+    }
+
+    private static void report(String name, JcifsFile[] files, int iterations, int rounds) throws Exception {
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            run(files, iterations);
+            double ns = (double) (System.nanoTime() - start) / iterations;
+            if (ns < best) best = ns;
+        }
+        System.out.println(String.format("%-14s %8.2f ns/call", name, best));
+    }
+
+    private static void run(JcifsFile[] files, int iterations) throws Exception {
+        int h = 0;
+        int j = 0;
+        for (int i = 0; i < iterations; i++) {
+            JcifsFile f = files[j];
+            if (++j == files.length) j = 0;
+            h += (i & 1) == 0 ? f.getServer().length() : f.getShare().length();
+        }
+        sink += h;
+    }
+
+}
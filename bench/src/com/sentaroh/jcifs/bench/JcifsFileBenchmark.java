@@ -0,0 +1,263 @@
+package com.sentaroh.jcifs.bench;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.sentaroh.jcifs.JcifsAuth;
+import com.sentaroh.jcifs.JcifsFile;
+import com.sentaroh.jcifs.bench.server.JcifsStandInServer;
+
+/**
+ * exists(), length(), listFiles() and stream read/write throughput of JcifsFile for each SMB level against one share.
+ * A fresh JcifsFile is used for every metadata call so the attribute cache of the SmbFile does not hide the request.
+ * The fixtures are created in jcifs-bench-LEVEL under the URL and deleted at the end.
+ *
+ * Without --url the benchmark runs against an in-process JcifsStandInServer that serves a temporary directory
+ * (or --dir), with --latency milliseconds added to each request and --bandwidth bytes per second of each
+ * direction. The stand-in speaks SMB2 only, so SMB1 is left out of the default levels in this mode.
+ *
+ * Usage: JcifsFileBenchmark [--url smb://server/share/dir/] [--domain d] [--user u] [--pass p]
+ *        [--levels SMB1,SMB201,SMB211,SMB212,SMB214] [--warmup 3] [--iterations 5] [--time 1000]
+ *        [--files 100] [--size 16] [--buffers 4096,65536,1048576] [--csv result.csv]
+ *        [--dir /tmp/share] [--latency 0] [--bandwidth 0]
+ */
+public class JcifsFileBenchmark {
+
+    final static private String[] LEVEL_NAMES = new String[]{"SMB1", "SMB201", "SMB211", "SMB212", "SMB214"};
+    final static private String[] STAND_IN_LEVEL_NAMES = new String[]{"SMB201", "SMB211", "SMB212", "SMB214"};
+    final static private String STAND_IN_SHARE = "bench";
+    final static private int[] LEVELS = new int[]{JcifsFile.JCIFS_FILE_SMB1, JcifsFile.JCIFS_FILE_SMB201,
+            JcifsFile.JCIFS_FILE_SMB211, JcifsFile.JCIFS_FILE_SMB212, JcifsFile.JCIFS_FILE_SMB214};
+
+    private String mUrl = null;
+    private String mDomain = null;
+    private String mUser = null;
+    private String mPass = null;
+    private String[] mLevels = null;
+    private int mWarmup = 3;
+    private int mIterations = 5;
+    private long mIterationMillis = 1000;
+    private int mListFileCount = 100;
+    private int mStreamSizeMb = 16;
+    private int[] mBufferSizes = new int[]{4096, 65536, 1048576};
+    private String mCsvPath = null;
+    private String mStandInDir = null;
+    private long mLatencyMillis = 0;
+    private long mBandwidth = 0;
+    private Properties mClientProperties = null;
+
+    public static void main(String[] args) throws Exception {
+        JcifsFileBenchmark bench = new JcifsFileBenchmark();
+        bench.parseArgs(args);
+        bench.run(System.out);
+    }
+
+    void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Value of " + name + " is missing");
+            String value = args[++i];
+            if (name.equals("--url")) mUrl = value.endsWith("/") ? value : value + "/";
+            else if (name.equals("--domain")) mDomain = value;
+            else if (name.equals("--user")) mUser = value;
+            else if (name.equals("--pass")) mPass = value;
+            else if (name.equals("--levels")) mLevels = value.split(",");
+            else if (name.equals("--warmup")) mWarmup = Integer.parseInt(value);
+            else if (name.equals("--iterations")) mIterations = Integer.parseInt(value);
+            else if (name.equals("--time")) mIterationMillis = Long.parseLong(value);
+            else if (name.equals("--files")) mListFileCount = Integer.parseInt(value);
+            else if (name.equals("--size")) mStreamSizeMb = Integer.parseInt(value);
+            else if (name.equals("--buffers")) {
+                String[] sizes = value.split(",");
+                mBufferSizes = new int[sizes.length];
+                for (int j = 0; j < sizes.length; j++) mBufferSizes[j] = Integer.parseInt(sizes[j].trim());
+            } else if (name.equals("--csv")) mCsvPath = value;
+            else if (name.equals("--dir")) mStandInDir = value;
+            else if (name.equals("--latency")) mLatencyMillis = Long.parseLong(value);
+            else if (name.equals("--bandwidth")) mBandwidth = Long.parseLong(value);
+            else throw new IllegalArgumentException("Unknown option " + name);
+        }
+        if (mLevels == null) mLevels = mUrl == null ? STAND_IN_LEVEL_NAMES : LEVEL_NAMES;
+    }
+
+    void run(PrintStream out) throws Exception {
+        if (mUrl != null) {
+            runBenchmarks(out);
+            return;
+        }
+        for (String level_name : mLevels) {
+            if (toSmbLevel(level_name.trim()) == JcifsFile.JCIFS_FILE_SMB1) {
+                throw new IllegalArgumentException("SMB1 is not supported by the stand-in server, use --url");
+            }
+        }
+        Path dir = mStandInDir != null ? Paths.get(mStandInDir) : Files.createTempDirectory("jcifs-bench");
+        JcifsStandInServer server = new JcifsStandInServer();
+        try {
+            server.addShare(STAND_IN_SHARE, dir);
+            server.setLatencyMillis(mLatencyMillis);
+            server.setBandwidth(mBandwidth);
+            server.start();
+            mUrl = server.getUrl(STAND_IN_SHARE);
+            mClientProperties = server.getClientProperties();
+            out.println("Stand-in server " + mUrl + " on " + dir + ", latency " + mLatencyMillis + "ms, bandwidth " +
+                    (mBandwidth == 0 ? "unlimited" : mBandwidth + " bytes/s"));
+            runBenchmarks(out);
+        } finally {
+            server.close();
+            if (mStandInDir == null) Files.deleteIfExists(dir);
+        }
+    }
+
+    private void runBenchmarks(PrintStream out) throws Exception {
+        JcifsBenchmarkRunner runner = new JcifsBenchmarkRunner(mWarmup, mIterations, mIterationMillis);
+        JcifsBenchmarkRunner.printHeader(out);
+        for (String level_name : mLevels) {
+            runLevel(runner, out, level_name.trim(), toSmbLevel(level_name.trim()));
+        }
+        if (mCsvPath != null) {
+            PrintStream csv = new PrintStream(new FileOutputStream(mCsvPath), false, "UTF-8");
+            try {
+                JcifsBenchmarkRunner.printCsv(csv, runner.getResults());
+            } finally {
+                csv.close();
+            }
+        }
+    }
+
+    private static int toSmbLevel(String level_name) {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(level_name)) return LEVELS[i];
+        }
+        throw new IllegalArgumentException("Unknown SMB level " + level_name);
+    }
+
+    private void runLevel(JcifsBenchmarkRunner runner, PrintStream out, String level_name, int smb_level) throws Exception {
+        final JcifsAuth auth = mClientProperties == null ? new JcifsAuth(smb_level, mDomain, mUser, mPass) :
+                JcifsAuth.createShared(smb_level, mDomain, mUser, mPass, mClientProperties);
+        final String base = mUrl + "jcifs-bench-" + level_name + "/";
+        final String data_path = base + "data.bin";
+        final String list_path = base + "list/";
+        final long stream_size = mStreamSizeMb * 1024L * 1024L;
+
+        createFixtures(auth, base, list_path, data_path, stream_size);
+        try {
+            List<JcifsBenchmarkRunner.Result> results = new ArrayList<JcifsBenchmarkRunner.Result>();
+            results.add(runner.run(level_name, "exists", "-", new JcifsBenchmarkRunner.Operation() {
+                @Override
+                public long run() throws Exception {
+                    if (!new JcifsFile(data_path, auth).exists()) throw new IllegalStateException(data_path + " not found");
+                    return 0;
+                }
+            }));
+            results.add(runner.run(level_name, "length", "-", new JcifsBenchmarkRunner.Operation() {
+                @Override
+                public long run() throws Exception {
+                    if (new JcifsFile(data_path, auth).length() != stream_size) throw new IllegalStateException("Unexpected length");
+                    return 0;
+                }
+            }));
+            results.add(runner.run(level_name, "listFiles", String.valueOf(mListFileCount), new JcifsBenchmarkRunner.Operation() {
+                @Override
+                public long run() throws Exception {
+                    JcifsFile[] files = new JcifsFile(list_path, auth).listFiles();
+                    if (files == null || files.length != mListFileCount) throw new IllegalStateException("Unexpected entry count");
+                    return 0;
+                }
+            }));
+            for (final int buffer_size : mBufferSizes) {
+                results.add(runner.run(level_name, "read", String.valueOf(buffer_size), new JcifsBenchmarkRunner.Operation() {
+                    private final byte[] mBuffer = new byte[buffer_size];
+
+                    @Override
+                    public long run() throws Exception {
+                        InputStream is = new JcifsFile(data_path, auth).getInputStream();
+                        long total = 0;
+                        try {
+                            int n;
+                            while ((n = is.read(mBuffer)) > 0) total += n;
+                        } finally {
+                            is.close();
+                        }
+                        return total;
+                    }
+                }));
+            }
+            for (final int buffer_size : mBufferSizes) {
+                final String write_path = base + "write-" + buffer_size + ".bin";
+                results.add(runner.run(level_name, "write", String.valueOf(buffer_size), new JcifsBenchmarkRunner.Operation() {
+                    private final byte[] mBuffer = new byte[buffer_size];
+
+                    @Override
+                    public long run() throws Exception {
+                        writeFile(new JcifsFile(write_path, auth), mBuffer, stream_size);
+                        return stream_size;
+                    }
+                }));
+            }
+            for (JcifsBenchmarkRunner.Result r : results) JcifsBenchmarkRunner.print(out, r);
+        } finally {
+            JcifsFile dir = new JcifsFile(base, auth);
+            if (dir.exists()) dir.delete();
+            auth.close();
+        }
+    }
+
+    private void createFixtures(JcifsAuth auth, String base, String list_path, String data_path, long stream_size) throws Exception {
+        JcifsFile dir = new JcifsFile(base, auth);
+        if (dir.exists()) dir.delete();
+        new JcifsFile(list_path, auth).mkdirs();
+        byte[] empty = new byte[0];
+        for (int i = 0; i < mListFileCount; i++) {
+            writeFile(new JcifsFile(list_path + String.format("file-%05d.txt", i), auth), empty, 0);
+        }
+        byte[] buf = new byte[1024 * 1024];
+        for (int i = 0; i < buf.length; i++) buf[i] = (byte) (i * 31);
+        writeFile(new JcifsFile(data_path, auth), buf, stream_size);
+    }
+
+    private static void writeFile(JcifsFile file, byte[] buf, long size) throws Exception {
+        OutputStream os = file.getOutputStream();
+        try {
+            long remaining = size;
+            while (remaining > 0) {
+                int n = (int) Math.min(buf.length, remaining);
+                os.write(buf, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.sentaroh.jcifs.bench.server;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.ByteArrayOutputStream;
+import java.security.SecureRandom;
+
+/**
+ * NTLMSSP session setup of the stand-in server, raw or wrapped in SPNEGO. Every user and password is accepted,
+ * the AUTHENTICATE message is not verified. No session key is derived, so the server cannot sign and
+ * the client must not require signing.
+ */
+final class JcifsStandInAuth {
+
+    final static private byte[] NTLMSSP_SIGNATURE = new byte[]{'N', 'T', 'L', 'M', 'S', 'S', 'P', 0};
+    final static private byte[] NTLM_OID = new byte[]{0x06, 0x0a, 0x2b, 0x06, 0x01, 0x04, 0x01, (byte) 0x82, 0x37, 0x02, 0x02, 0x0a};
+    final static private String TARGET_NAME = "STANDIN";
+
+    final static int NTLM_NEGOTIATE = 1;
+    final static int NTLM_AUTHENTICATE = 3;
+
+    final static private int NTLMSSP_NEGOTIATE_UNICODE = 0x00000001;
+    final static private int NTLMSSP_REQUEST_TARGET = 0x00000004;
+    final static private int NTLMSSP_NEGOTIATE_TARGET_INFO = 0x00800000;
+    final static private int NTLMSSP_TARGET_TYPE_SERVER = 0x00020000;
+    // Flags echoed from the NEGOTIATE message if the client offers them
+    final static private int NTLMSSP_ECHO_FLAGS = 0x00000001 | 0x00000002 | 0x00000010 | 0x00000020 | 0x00000200 | 0x00008000 |
+            0x00080000 | 0x02000000 | 0x20000000 | 0x40000000 | 0x80000000;
+
+    final static private SecureRandom mRandom = new SecureRandom();
+
+    private JcifsStandInAuth() {
+    }
+
+    static boolean isSpnego(byte[] blob) {
+        return blob.length > 0 && (blob[0] == 0x60 || blob[0] == (byte) 0xa0 || blob[0] == (byte) 0xa1);
+    }
+
+    /**
+     * @return Offset of the NTLMSSP message in the blob, -1 if there is none
+     */
+    static int findNtlmMessage(byte[] blob) {
+        outer:
+        for (int i = 0; i + NTLMSSP_SIGNATURE.length + 4 <= blob.length; i++) {
+            for (int j = 0; j < NTLMSSP_SIGNATURE.length; j++) {
+                if (blob[i + j] != NTLMSSP_SIGNATURE[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    static int getMessageType(byte[] blob, int pos) {
+        return JcifsStandInBuffer.getInt(blob, pos + 8);
+    }
+
+    static boolean isAnonymous(byte[] blob, int pos) {
+        // UserNameFields of AUTHENTICATE
+        return pos + 40 <= blob.length && JcifsStandInBuffer.getShort(blob, pos + 36) == 0;
+    }
+
+    static byte[] createChallenge(byte[] blob, int pos) {
+        int client_flags = JcifsStandInBuffer.getInt(blob, pos + 12);
+        int flags = (client_flags & NTLMSSP_ECHO_FLAGS) | NTLMSSP_NEGOTIATE_UNICODE | NTLMSSP_REQUEST_TARGET |
+                NTLMSSP_NEGOTIATE_TARGET_INFO | NTLMSSP_TARGET_TYPE_SERVER;
+        byte[] target_name = TARGET_NAME.getBytes(JcifsStandInBuffer.UTF_16LE);
+        JcifsStandInBuffer info = new JcifsStandInBuffer(64);
+        info.putShort(2).putShort(target_name.length).putBytes(target_name);
+        info.putShort(1).putShort(target_name.length).putBytes(target_name);
+        info.putShort(0).putShort(0);
+        byte[] target_info = info.toByteArray();
+        byte[] challenge = new byte[8];
+        mRandom.nextBytes(challenge);
+
+        int payload = 56;
+        JcifsStandInBuffer msg = new JcifsStandInBuffer(payload + target_name.length + target_info.length);
+        msg.putBytes(NTLMSSP_SIGNATURE).putInt(2);
+        msg.putShort(target_name.length).putShort(target_name.length).putInt(payload);
+        msg.putInt(flags);
+        msg.putBytes(challenge);
+        msg.putZero(8);
+        msg.putShort(target_info.length).putShort(target_info.length).putInt(payload + target_name.length);
+        // Version 6.1 build 7601, NTLM revision 15
+        msg.putByte(6).putByte(1).putShort(7601).putZero(3).putByte(15);
+        msg.putBytes(target_name).putBytes(target_info);
+        return msg.toByteArray();
+    }
+
+    /**
+     * SPNEGO NegTokenResp with accept-incomplete, the NTLM mechanism and the CHALLENGE message
+     */
+    static byte[] wrapChallenge(byte[] challenge) {
+        byte[] neg_state = new byte[]{(byte) 0xa0, 0x03, 0x0a, 0x01, 0x01};
+        byte[] mech = der(0xa1, NTLM_OID);
+        byte[] token = der(0xa2, der(0x04, challenge));
+        return der(0xa1, der(0x30, concat(neg_state, mech, token)));
+    }
+
+    /**
+     * SPNEGO NegTokenResp with accept-completed
+     */
+    static byte[] acceptCompleted() {
+        return der(0xa1, der(0x30, new byte[]{(byte) 0xa0, 0x03, 0x0a, 0x01, 0x00}));
+    }
+
+    private static byte[] der(int tag, byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 6);
+        out.write(tag);
+        int len = content.length;
+        if (len < 0x80) {
+            out.write(len);
+        } else if (len < 0x100) {
+            out.write(0x81);
+            out.write(len);
+        } else if (len < 0x10000) {
+            out.write(0x82);
+            out.write(len >> 8);
+            out.write(len);
+        } else {
+            out.write(0x83);
+            out.write(len >> 16);
+            out.write(len >> 8);
+            out.write(len);
+        }
+        out.write(content, 0, content.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.write(p, 0, p.length);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.sentaroh.jcifs.bench.server;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Little endian encoding of SMB2 messages. The static methods read a request, an instance builds a response.
+ */
+final class JcifsStandInBuffer {
+
+    final static Charset UTF_16LE = Charset.forName("UTF-16LE");
+
+    private byte[] mData;
+    private int mLength = 0;
+
+    JcifsStandInBuffer(int capacity) {
+        mData = new byte[Math.max(16, capacity)];
+    }
+
+    static int getShort(byte[] b, int pos) {
+        return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8;
+    }
+
+    static int getInt(byte[] b, int pos) {
+        return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8 | (b[pos + 2] & 0xff) << 16 | (b[pos + 3] & 0xff) << 24;
+    }
+
+    static long getLong(byte[] b, int pos) {
+        return (getInt(b, pos) & 0xffffffffL) | ((long) getInt(b, pos + 4)) << 32;
+    }
+
+    static String getString(byte[] b, int pos, int length) {
+        if (length <= 0) return "";
+        return new String(b, pos, length, UTF_16LE);
+    }
+
+    static void setShort(byte[] b, int pos, int v) {
+        b[pos] = (byte) v;
+        b[pos + 1] = (byte) (v >> 8);
+    }
+
+    static void setInt(byte[] b, int pos, int v) {
+        b[pos] = (byte) v;
+        b[pos + 1] = (byte) (v >> 8);
+        b[pos + 2] = (byte) (v >> 16);
+        b[pos + 3] = (byte) (v >> 24);
+    }
+
+    static void setLong(byte[] b, int pos, long v) {
+        setInt(b, pos, (int) v);
+        setInt(b, pos + 4, (int) (v >> 32));
+    }
+
+    private void ensure(int n) {
+        if (mLength + n > mData.length) mData = Arrays.copyOf(mData, Math.max(mData.length * 2, mLength + n));
+    }
+
+    JcifsStandInBuffer putByte(int v) {
+        ensure(1);
+        mData[mLength++] = (byte) v;
+        return this;
+    }
+
+    JcifsStandInBuffer putShort(int v) {
+        ensure(2);
+        setShort(mData, mLength, v);
+        mLength += 2;
+        return this;
+    }
+
+    JcifsStandInBuffer putInt(int v) {
+        ensure(4);
+        setInt(mData, mLength, v);
+        mLength += 4;
+        return this;
+    }
+
+    JcifsStandInBuffer putLong(long v) {
+        ensure(8);
+        setLong(mData, mLength, v);
+        mLength += 8;
+        return this;
+    }
+
+    JcifsStandInBuffer putBytes(byte[] b) {
+        return putBytes(b, 0, b.length);
+    }
+
+    JcifsStandInBuffer putBytes(byte[] b, int off, int len) {
+        ensure(len);
+        System.arraycopy(b, off, mData, mLength, len);
+        mLength += len;
+        return this;
+    }
+
+    JcifsStandInBuffer putZero(int n) {
+        ensure(n);
+        Arrays.fill(mData, mLength, mLength + n, (byte) 0);
+        mLength += n;
+        return this;
+    }
+
+    JcifsStandInBuffer align(int alignment) {
+        int pad = (alignment - mLength % alignment) % alignment;
+        return putZero(pad);
+    }
+
+    int length() {
+        return mLength;
+    }
+
+    byte[] array() {
+        return mData;
+    }
+
+    void setShortAt(int pos, int v) {
+        setShort(mData, pos, v);
+    }
+
+    void setIntAt(int pos, int v) {
+        setInt(mData, pos, v);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(mData, mLength);
+    }
+
+}
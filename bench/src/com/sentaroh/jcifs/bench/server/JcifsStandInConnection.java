@@ -0,0 +1,1289 @@
+package com.sentaroh.jcifs.bench.server;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * One client connection of the stand-in server. The reader thread reads the direct TCP messages and hands each one
+ * to the worker pool of the server, so requests the client has in flight at the same time also wait for the
+ * latency at the same time, as on a real link. Responses are written under a lock in the order they complete.
+ * Compounded requests are processed in order in one task and answered with one compounded response.
+ */
+final class JcifsStandInConnection implements Runnable {
+
+    final static private int SMB2_NEGOTIATE = 0x00;
+    final static private int SMB2_SESSION_SETUP = 0x01;
+    final static private int SMB2_LOGOFF = 0x02;
+    final static private int SMB2_TREE_CONNECT = 0x03;
+    final static private int SMB2_TREE_DISCONNECT = 0x04;
+    final static private int SMB2_CREATE = 0x05;
+    final static private int SMB2_CLOSE = 0x06;
+    final static private int SMB2_FLUSH = 0x07;
+    final static private int SMB2_READ = 0x08;
+    final static private int SMB2_WRITE = 0x09;
+    final static private int SMB2_LOCK = 0x0a;
+    final static private int SMB2_IOCTL = 0x0b;
+    final static private int SMB2_CANCEL = 0x0c;
+    final static private int SMB2_ECHO = 0x0d;
+    final static private int SMB2_QUERY_DIRECTORY = 0x0e;
+    final static private int SMB2_CHANGE_NOTIFY = 0x0f;
+    final static private int SMB2_QUERY_INFO = 0x10;
+    final static private int SMB2_SET_INFO = 0x11;
+
+    final static private int SMB2_FLAGS_SERVER_TO_REDIR = 0x00000001;
+    final static private int SMB2_FLAGS_RELATED_OPERATIONS = 0x00000004;
+    final static private int SMB2_HEADER_SIZE = 64;
+
+    final static private int STATUS_SUCCESS = 0x00000000;
+    final static private int STATUS_NO_MORE_FILES = 0x80000006;
+    final static private int STATUS_BUFFER_OVERFLOW = 0x80000005;
+    final static private int STATUS_INVALID_INFO_CLASS = 0xC0000003;
+    final static private int STATUS_INFO_LENGTH_MISMATCH = 0xC0000004;
+    final static private int STATUS_NO_SUCH_FILE = 0xC000000F;
+    final static private int STATUS_INVALID_DEVICE_REQUEST = 0xC0000010;
+    final static private int STATUS_END_OF_FILE = 0xC0000011;
+    final static private int STATUS_MORE_PROCESSING_REQUIRED = 0xC0000016;
+    final static private int STATUS_ACCESS_DENIED = 0xC0000022;
+    final static private int STATUS_OBJECT_NAME_INVALID = 0xC0000033;
+    final static private int STATUS_OBJECT_NAME_NOT_FOUND = 0xC0000034;
+    final static private int STATUS_OBJECT_NAME_COLLISION = 0xC0000035;
+    final static private int STATUS_OBJECT_PATH_NOT_FOUND = 0xC000003A;
+    final static private int STATUS_LOGON_FAILURE = 0xC000006D;
+    final static private int STATUS_FILE_IS_A_DIRECTORY = 0xC00000BA;
+    final static private int STATUS_NOT_SUPPORTED = 0xC00000BB;
+    final static private int STATUS_NETWORK_NAME_DELETED = 0xC00000C9;
+    final static private int STATUS_BAD_NETWORK_NAME = 0xC00000CC;
+    final static private int STATUS_UNEXPECTED_IO_ERROR = 0xC00000E9;
+    final static private int STATUS_DIRECTORY_NOT_EMPTY = 0xC0000101;
+    final static private int STATUS_NOT_A_DIRECTORY = 0xC0000103;
+    final static private int STATUS_FILE_CLOSED = 0xC0000128;
+    final static private int STATUS_NOT_FOUND = 0xC0000225;
+
+    final static private int DIALECT_SMB202 = 0x0202;
+    final static private int DIALECT_SMB210 = 0x0210;
+    final static private int DIALECT_SMB2_WILDCARD = 0x02ff;
+
+    final static private int SMB2_GLOBAL_CAP_LARGE_MTU = 0x00000004;
+    final static private int SMB2_NEGOTIATE_SIGNING_ENABLED = 0x0001;
+    final static private int SMB2_SESSION_FLAG_IS_NULL = 0x0002;
+
+    final static private int FILE_SUPERSEDE = 0;
+    final static private int FILE_OPEN = 1;
+    final static private int FILE_CREATE = 2;
+    final static private int FILE_OPEN_IF = 3;
+    final static private int FILE_OVERWRITE = 4;
+    final static private int FILE_OVERWRITE_IF = 5;
+
+    final static private int FILE_SUPERSEDED = 0;
+    final static private int FILE_OPENED = 1;
+    final static private int FILE_CREATED = 2;
+    final static private int FILE_OVERWRITTEN = 3;
+
+    final static private int FILE_DIRECTORY_FILE = 0x00000001;
+    final static private int FILE_NON_DIRECTORY_FILE = 0x00000040;
+    final static private int FILE_DELETE_ON_CLOSE = 0x00001000;
+
+    final static private int SMB2_CLOSE_FLAG_POSTQUERY_ATTRIB = 0x0001;
+
+    final static private int SMB2_RESTART_SCANS = 0x01;
+    final static private int SMB2_RETURN_SINGLE_ENTRY = 0x02;
+    final static private int SMB2_REOPEN = 0x10;
+
+    final static private int FILE_DIRECTORY_INFORMATION = 0x01;
+    final static private int FILE_FULL_DIRECTORY_INFORMATION = 0x02;
+    final static private int FILE_BOTH_DIRECTORY_INFORMATION = 0x03;
+    final static private int FILE_NAMES_INFORMATION = 0x0c;
+    final static private int FILE_ID_BOTH_DIRECTORY_INFORMATION = 0x25;
+    final static private int FILE_ID_FULL_DIRECTORY_INFORMATION = 0x26;
+
+    final static private int SMB2_0_INFO_FILE = 0x01;
+    final static private int SMB2_0_INFO_FILESYSTEM = 0x02;
+    final static private int SMB2_0_INFO_SECURITY = 0x03;
+
+    final static private int FILE_BASIC_INFORMATION = 4;
+    final static private int FILE_STANDARD_INFORMATION = 5;
+    final static private int FILE_INTERNAL_INFORMATION = 6;
+    final static private int FILE_EA_INFORMATION = 7;
+    final static private int FILE_ACCESS_INFORMATION = 8;
+    final static private int FILE_RENAME_INFORMATION = 10;
+    final static private int FILE_DISPOSITION_INFORMATION = 13;
+    final static private int FILE_POSITION_INFORMATION = 14;
+    final static private int FILE_MODE_INFORMATION = 16;
+    final static private int FILE_ALIGNMENT_INFORMATION = 17;
+    final static private int FILE_ALL_INFORMATION = 18;
+    final static private int FILE_ALLOCATION_INFORMATION = 19;
+    final static private int FILE_END_OF_FILE_INFORMATION = 20;
+    final static private int FILE_NETWORK_OPEN_INFORMATION = 34;
+    final static private int FILE_ATTRIBUTE_TAG_INFORMATION = 35;
+
+    final static private int FILE_FS_VOLUME_INFORMATION = 1;
+    final static private int FILE_FS_SIZE_INFORMATION = 3;
+    final static private int FILE_FS_DEVICE_INFORMATION = 4;
+    final static private int FILE_FS_ATTRIBUTE_INFORMATION = 5;
+    final static private int FILE_FS_FULL_SIZE_INFORMATION = 7;
+
+    final static private int FSCTL_DFS_GET_REFERRALS = 0x00060194;
+    final static private int FSCTL_SRV_REQUEST_RESUME_KEY = 0x00140078;
+    final static private int FSCTL_VALIDATE_NEGOTIATE_INFO = 0x00140204;
+    final static private int FSCTL_SRV_COPYCHUNK = 0x001440F2;
+    final static private int FSCTL_SRV_COPYCHUNK_WRITE = 0x001480F2;
+
+    final static private int FILE_ALL_ACCESS = 0x001F01FF;
+    final static private int SECTOR_SIZE = 512;
+    final static private int SECTORS_PER_UNIT = 8;
+    final static private int MAX_CREDITS_GRANTED = 8192;
+
+    private final JcifsStandInServer mServer;
+    private final Socket mSocket;
+    private final InputStream mIn;
+    private final OutputStream mOut;
+    private final Object mWriteLock = new Object();
+
+    private final ConcurrentHashMap<Long, JcifsStandInOpen> mOpens = new ConcurrentHashMap<Long, JcifsStandInOpen>();
+    private final ConcurrentHashMap<Integer, String> mTrees = new ConcurrentHashMap<Integer, String>();
+    private final AtomicLong mNextFileId = new AtomicLong(1);
+    private final AtomicInteger mNextTreeId = new AtomicInteger(1);
+
+    private volatile int mDialect = DIALECT_SMB202;
+    private volatile boolean mClosed = false;
+
+    /**
+     * Ids carried from one command of a compounded request to the next related one
+     */
+    private static class Compound {
+        long sessionId = 0;
+        int treeId = 0;
+        long fileId = -1;
+        int status = STATUS_SUCCESS;
+    }
+
+    private static class Reply {
+        final int status;
+        final JcifsStandInBuffer body;
+        long sessionId = -1;
+        int treeId = -1;
+        long fileId = -1;
+
+        Reply(int status, JcifsStandInBuffer body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static class StatusException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        StatusException(int status) {
+            super(String.format("NT status 0x%08X", status));
+            this.status = status;
+        }
+    }
+
+    JcifsStandInConnection(JcifsStandInServer server, Socket socket) throws IOException {
+        mServer = server;
+        mSocket = socket;
+        mSocket.setTcpNoDelay(true);
+        mIn = socket.getInputStream();
+        mOut = socket.getOutputStream();
+    }
+
+    @Override
+    public void run() {
+        try {
+            byte[] msg;
+            while ((msg = readMessage()) != null) {
+                mServer.getUpstream().transfer(msg.length + 4);
+                final byte[] request = msg;
+                mServer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        process(request);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            // Connection closed by the client or the server
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    private byte[] readMessage() throws IOException {
+        while (true) {
+            byte[] nb = new byte[4];
+            if (!readFully(nb, true)) return null;
+            int length = (nb[1] & 0xff) << 16 | (nb[2] & 0xff) << 8 | (nb[3] & 0xff);
+            byte[] msg = new byte[length];
+            readFully(msg, false);
+            // 0x85 is a NetBIOS keep-alive
+            if (nb[0] == 0) return msg;
+        }
+    }
+
+    private boolean readFully(byte[] b, boolean eof_allowed) throws IOException {
+        int pos = 0;
+        while (pos < b.length) {
+            int n = mIn.read(b, pos, b.length - pos);
+            if (n < 0) {
+                if (pos == 0 && eof_allowed) return false;
+                throw new EOFException();
+            }
+            pos += n;
+        }
+        return true;
+    }
+
+    private void process(byte[] msg) {
+        try {
+            mServer.getDownstream().delay();
+            mServer.countRequest();
+            JcifsStandInBuffer out;
+            if (msg.length >= 4 && (msg[0] & 0xff) == 0xff && msg[1] == 'S' && msg[2] == 'M' && msg[3] == 'B') {
+                out = processSmb1Negotiate(msg);
+            } else if (msg.length >= SMB2_HEADER_SIZE && (msg[0] & 0xff) == 0xfe && msg[1] == 'S' && msg[2] == 'M' && msg[3] == 'B') {
+                out = processSmb2(msg);
+            } else {
+                out = null;
+            }
+            if (out == null) {
+                close();
+                return;
+            }
+            if (out.length() > 0) send(out);
+        } catch (IOException e) {
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+        }
+    }
+
+    private void send(JcifsStandInBuffer out) throws IOException, InterruptedException {
+        int length = out.length();
+        mServer.getDownstream().transfer(length + 4);
+        synchronized (mWriteLock) {
+            mOut.write(new byte[]{0, (byte) (length >> 16), (byte) (length >> 8), (byte) length});
+            mOut.write(out.array(), 0, length);
+            mOut.flush();
+        }
+    }
+
+    void close() {
+        synchronized (this) {
+            if (mClosed) return;
+            mClosed = true;
+        }
+        try {
+            mSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        for (JcifsStandInOpen open : mOpens.values()) {
+            try {
+                closeOpen(open);
+            } catch (IOException e) {
+                // The client is gone, nothing to report to
+            }
+        }
+        mOpens.clear();
+        mServer.removeConnection(this);
+    }
+
+    /**
+     * Multi-protocol negotiate of an SMB1 client offering SMB2, answered with an SMB2 NEGOTIATE response.
+     * SMB1 itself is not served.
+     */
+    private JcifsStandInBuffer processSmb1Negotiate(byte[] msg) {
+        String dialects = new String(msg, StandardCharsets.ISO_8859_1);
+        int dialect;
+        if (dialects.contains("SMB 2.???")) dialect = DIALECT_SMB2_WILDCARD;
+        else if (dialects.contains("SMB 2.002")) dialect = DIALECT_SMB202;
+        else return null;
+        JcifsStandInBuffer out = new JcifsStandInBuffer(256);
+        writeHeader(out, SMB2_NEGOTIATE, 0, 0, 1, 0, 0, 0, 0, 0, 0);
+        out.putBytes(negotiateBody(dialect).toByteArray());
+        return out;
+    }
+
+    private JcifsStandInBuffer processSmb2(byte[] msg) {
+        JcifsStandInBuffer out = new JcifsStandInBuffer(256);
+        Compound compound = new Compound();
+        int pos = 0;
+        int last_start = -1;
+        while (true) {
+            int next = JcifsStandInBuffer.getInt(msg, pos + 20);
+            int end = next == 0 ? msg.length : pos + next;
+            if (end > msg.length || end < pos + SMB2_HEADER_SIZE) return null;
+            if (last_start >= 0) {
+                out.align(8);
+                out.setIntAt(last_start + 20, out.length() - last_start);
+            }
+            int start = out.length();
+            if (processCommand(msg, pos, end, compound, out)) last_start = start;
+            if (next == 0) break;
+            pos = end;
+        }
+        // jcifs-ng expects the last response of a compound padded to 8 bytes as well
+        if (pos > 0) out.align(8);
+        return out;
+    }
+
+    /**
+     * @return false if the command has no response
+     */
+    private boolean processCommand(byte[] msg, int pos, int end, Compound compound, JcifsStandInBuffer out) {
+        int command = JcifsStandInBuffer.getShort(msg, pos + 12);
+        int credit_charge = JcifsStandInBuffer.getShort(msg, pos + 6);
+        int credit_request = JcifsStandInBuffer.getShort(msg, pos + 14);
+        int flags = JcifsStandInBuffer.getInt(msg, pos + 16);
+        long message_id = JcifsStandInBuffer.getLong(msg, pos + 24);
+        int process_id = JcifsStandInBuffer.getInt(msg, pos + 32);
+        int tree_id = JcifsStandInBuffer.getInt(msg, pos + 36);
+        long session_id = JcifsStandInBuffer.getLong(msg, pos + 40);
+        boolean related = (flags & SMB2_FLAGS_RELATED_OPERATIONS) != 0;
+        if (related) {
+            if (session_id == -1) session_id = compound.sessionId;
+            if (tree_id == -1) tree_id = compound.treeId;
+        } else {
+            compound.fileId = -1;
+            compound.status = STATUS_SUCCESS;
+        }
+        if (command == SMB2_CANCEL) return false;
+
+        Reply reply;
+        if (related && compound.status != STATUS_SUCCESS) {
+            reply = error(compound.status);
+        } else {
+            try {
+                reply = dispatch(command, msg, pos, end, tree_id, session_id, related ? compound.fileId : -1);
+            } catch (StatusException e) {
+                reply = error(e.status);
+            } catch (IOException e) {
+                reply = error(toStatus(e));
+            }
+        }
+        if (reply.sessionId != -1) session_id = reply.sessionId;
+        if (reply.treeId != -1) tree_id = reply.treeId;
+        if (reply.fileId != -1) compound.fileId = reply.fileId;
+        compound.sessionId = session_id;
+        compound.treeId = tree_id;
+        if (isError(reply.status)) compound.status = reply.status;
+
+        int credits = Math.min(Math.max(credit_request, 1), MAX_CREDITS_GRANTED);
+        writeHeader(out, command, reply.status, credit_charge, credits, related ? SMB2_FLAGS_RELATED_OPERATIONS : 0,
+                message_id, process_id, tree_id, session_id, 0);
+        out.putBytes(reply.body.array(), 0, reply.body.length());
+        return true;
+    }
+
+    private static boolean isError(int status) {
+        return (status & 0xC0000000) == 0xC0000000 && status != STATUS_MORE_PROCESSING_REQUIRED;
+    }
+
+    private static void writeHeader(JcifsStandInBuffer out, int command, int status, int credit_charge, int credits, int flags,
+                                    long message_id, int process_id, int tree_id, long session_id, int next) {
+        out.putByte(0xfe).putByte('S').putByte('M').putByte('B');
+        out.putShort(SMB2_HEADER_SIZE);
+        out.putShort(credit_charge);
+        out.putInt(status);
+        out.putShort(command);
+        out.putShort(credits);
+        out.putInt(SMB2_FLAGS_SERVER_TO_REDIR | flags);
+        out.putInt(next);
+        out.putLong(message_id);
+        out.putInt(process_id);
+        out.putInt(tree_id);
+        out.putLong(session_id);
+        out.putZero(16);
+    }
+
+    private static Reply error(int status) {
+        JcifsStandInBuffer body = new JcifsStandInBuffer(9);
+        body.putShort(9).putByte(0).putByte(0).putInt(0).putByte(0);
+        return new Reply(status, body);
+    }
+
+    private static Reply empty(int structure_size) {
+        JcifsStandInBuffer body = new JcifsStandInBuffer(4);
+        body.putShort(structure_size);
+        if (structure_size == 4) body.putShort(0);
+        return new Reply(STATUS_SUCCESS, body);
+    }
+
+    private Reply dispatch(int command, byte[] msg, int pos, int end, int tree_id, long session_id, long related_file_id)
+            throws StatusException, IOException {
+        int b = pos + SMB2_HEADER_SIZE;
+        switch (command) {
+            case SMB2_NEGOTIATE:
+                return negotiate(msg, b, end);
+            case SMB2_SESSION_SETUP:
+                return sessionSetup(msg, pos, b, session_id);
+            case SMB2_LOGOFF:
+                return empty(4);
+            case SMB2_TREE_CONNECT:
+                return treeConnect(msg, pos, b);
+            case SMB2_TREE_DISCONNECT:
+                mTrees.remove(tree_id);
+                return empty(4);
+            case SMB2_CREATE:
+                return create(msg, pos, b, tree_id);
+            case SMB2_CLOSE:
+                return closeFile(msg, b, related_file_id);
+            case SMB2_FLUSH:
+                getOpen(msg, b + 8, related_file_id);
+                return empty(4);
+            case SMB2_READ:
+                return read(msg, b, related_file_id);
+            case SMB2_WRITE:
+                return write(msg, pos, b, related_file_id);
+            case SMB2_LOCK:
+                return empty(4);
+            case SMB2_IOCTL:
+                return ioctl(msg, pos, b, related_file_id);
+            case SMB2_ECHO:
+                return empty(4);
+            case SMB2_QUERY_DIRECTORY:
+                return queryDirectory(msg, pos, b, related_file_id);
+            case SMB2_CHANGE_NOTIFY:
+                throw new StatusException(STATUS_NOT_SUPPORTED);
+            case SMB2_QUERY_INFO:
+                return queryInfo(msg, b, related_file_id);
+            case SMB2_SET_INFO:
+                return setInfo(msg, pos, b, related_file_id);
+            default:
+                throw new StatusException(STATUS_NOT_SUPPORTED);
+        }
+    }
+
+    private Reply negotiate(byte[] msg, int b, int end) throws StatusException {
+        int count = JcifsStandInBuffer.getShort(msg, b + 2);
+        int dialect = 0;
+        for (int i = 0; i < count && b + 36 + i * 2 + 2 <= end; i++) {
+            int d = JcifsStandInBuffer.getShort(msg, b + 36 + i * 2);
+            if ((d == DIALECT_SMB202 || d == DIALECT_SMB210) && d > dialect) dialect = d;
+        }
+        if (dialect == 0) throw new StatusException(STATUS_NOT_SUPPORTED);
+        mDialect = dialect;
+        return new Reply(STATUS_SUCCESS, negotiateBody(dialect));
+    }
+
+    private JcifsStandInBuffer negotiateBody(int dialect) {
+        int max_size = dialect == DIALECT_SMB202 ? 65536 : mServer.getMaxIoSize();
+        JcifsStandInBuffer body = new JcifsStandInBuffer(72);
+        body.putShort(65);
+        body.putShort(SMB2_NEGOTIATE_SIGNING_ENABLED);
+        body.putShort(dialect);
+        body.putShort(0);
+        body.putBytes(mServer.getServerGuid());
+        body.putInt(dialect == DIALECT_SMB202 ? 0 : SMB2_GLOBAL_CAP_LARGE_MTU);
+        body.putInt(max_size);
+        body.putInt(max_size);
+        body.putInt(max_size);
+        body.putLong(JcifsStandInFileInfo.toFileTime(System.currentTimeMillis()));
+        body.putLong(0);
+        // No security blob, the client starts NTLMSSP by itself
+        body.putShort(SMB2_HEADER_SIZE + 64);
+        body.putShort(0);
+        body.putInt(0);
+        body.putByte(0);
+        return body;
+    }
+
+    private Reply sessionSetup(byte[] msg, int pos, int b, long session_id) throws StatusException {
+        int sec_offset = JcifsStandInBuffer.getShort(msg, b + 12);
+        int sec_length = JcifsStandInBuffer.getShort(msg, b + 14);
+        byte[] blob = new byte[sec_length];
+        System.arraycopy(msg, pos + sec_offset, blob, 0, sec_length);
+        boolean spnego = JcifsStandInAuth.isSpnego(blob);
+        int ntlm = JcifsStandInAuth.findNtlmMessage(blob);
+        if (ntlm < 0) throw new StatusException(STATUS_LOGON_FAILURE);
+
+        int type = JcifsStandInAuth.getMessageType(blob, ntlm);
+        byte[] token;
+        int status;
+        int session_flags = 0;
+        if (type == JcifsStandInAuth.NTLM_NEGOTIATE) {
+            if (session_id == 0) session_id = mServer.nextSessionId();
+            byte[] challenge = JcifsStandInAuth.createChallenge(blob, ntlm);
+            token = spnego ? JcifsStandInAuth.wrapChallenge(challenge) : challenge;
+            status = STATUS_MORE_PROCESSING_REQUIRED;
+        } else if (type == JcifsStandInAuth.NTLM_AUTHENTICATE) {
+            token = spnego ? JcifsStandInAuth.acceptCompleted() : new byte[0];
+            if (JcifsStandInAuth.isAnonymous(blob, ntlm)) session_flags = SMB2_SESSION_FLAG_IS_NULL;
+            status = STATUS_SUCCESS;
+        } else {
+            throw new StatusException(STATUS_LOGON_FAILURE);
+        }
+        JcifsStandInBuffer body = new JcifsStandInBuffer(8 + token.length);
+        body.putShort(9);
+        body.putShort(session_flags);
+        body.putShort(SMB2_HEADER_SIZE + 8);
+        body.putShort(token.length);
+        if (token.length == 0) body.putByte(0);
+        else body.putBytes(token);
+        Reply reply = new Reply(status, body);
+        reply.sessionId = session_id;
+        return reply;
+    }
+
+    private Reply treeConnect(byte[] msg, int pos, int b) throws StatusException {
+        int path_offset = JcifsStandInBuffer.getShort(msg, b + 4);
+        int path_length = JcifsStandInBuffer.getShort(msg, b + 6);
+        String path = JcifsStandInBuffer.getString(msg, pos + path_offset, path_length);
+        String share = path.substring(path.lastIndexOf('\\') + 1);
+        boolean ipc = share.equalsIgnoreCase("IPC$");
+        if (!ipc && mServer.getShareRoot(share) == null) throw new StatusException(STATUS_BAD_NETWORK_NAME);
+        int tree_id = mNextTreeId.getAndIncrement();
+        mTrees.put(tree_id, share);
+        JcifsStandInBuffer body = new JcifsStandInBuffer(16);
+        body.putShort(16);
+        body.putByte(ipc ? 0x02 : 0x01);
+        body.putByte(0);
+        body.putInt(0);
+        body.putInt(0);
+        body.putInt(FILE_ALL_ACCESS);
+        Reply reply = new Reply(STATUS_SUCCESS, body);
+        reply.treeId = tree_id;
+        return reply;
+    }
+
+    private Path getShareRoot(int tree_id) throws StatusException {
+        String share = mTrees.get(tree_id);
+        if (share == null) throw new StatusException(STATUS_NETWORK_NAME_DELETED);
+        Path root = mServer.getShareRoot(share);
+        if (root == null) throw new StatusException(STATUS_BAD_NETWORK_NAME);
+        return root;
+    }
+
+    /**
+     * Local path of a share relative name, backslash separated. Names that leave the share are rejected.
+     */
+    private static Path resolve(Path root, String name) throws StatusException {
+        Path path = root;
+        for (String part : name.split("\\\\")) {
+            if (part.isEmpty() || part.equals(".")) continue;
+            if (part.equals("..") || part.indexOf('/') >= 0 || part.indexOf(':') >= 0) {
+                throw new StatusException(STATUS_OBJECT_NAME_INVALID);
+            }
+            path = path.resolve(part);
+        }
+        return path;
+    }
+
+    private static String getLastName(String name) {
+        String trimmed = name.endsWith("\\") ? name.substring(0, name.length() - 1) : name;
+        return trimmed.substring(trimmed.lastIndexOf('\\') + 1);
+    }
+
+    private Reply create(byte[] msg, int pos, int b, int tree_id) throws StatusException, IOException {
+        int disposition = JcifsStandInBuffer.getInt(msg, b + 36);
+        int options = JcifsStandInBuffer.getInt(msg, b + 40);
+        int name_offset = JcifsStandInBuffer.getShort(msg, b + 44);
+        int name_length = JcifsStandInBuffer.getShort(msg, b + 46);
+        String share = mTrees.get(tree_id);
+        Path root = getShareRoot(tree_id);
+        String name = JcifsStandInBuffer.getString(msg, pos + name_offset, name_length);
+        Path path = resolve(root, name);
+
+        boolean want_dir = (options & FILE_DIRECTORY_FILE) != 0;
+        boolean want_file = (options & FILE_NON_DIRECTORY_FILE) != 0;
+        boolean exists = Files.exists(path);
+        boolean is_dir = exists && Files.isDirectory(path);
+        if (!exists && !Files.isDirectory(path.getParent() == null ? root : path.getParent())) {
+            throw new StatusException(STATUS_OBJECT_PATH_NOT_FOUND);
+        }
+        if (exists && is_dir && want_file) throw new StatusException(STATUS_FILE_IS_A_DIRECTORY);
+        if (exists && !is_dir && want_dir) throw new StatusException(STATUS_NOT_A_DIRECTORY);
+
+        int action;
+        boolean truncate = false;
+        switch (disposition) {
+            case FILE_OPEN:
+                if (!exists) throw new StatusException(STATUS_OBJECT_NAME_NOT_FOUND);
+                action = FILE_OPENED;
+                break;
+            case FILE_CREATE:
+                if (exists) throw new StatusException(STATUS_OBJECT_NAME_COLLISION);
+                action = FILE_CREATED;
+                break;
+            case FILE_OPEN_IF:
+                action = exists ? FILE_OPENED : FILE_CREATED;
+                break;
+            case FILE_OVERWRITE:
+                if (!exists) throw new StatusException(STATUS_OBJECT_NAME_NOT_FOUND);
+                action = FILE_OVERWRITTEN;
+                truncate = true;
+                break;
+            case FILE_OVERWRITE_IF:
+                action = exists ? FILE_OVERWRITTEN : FILE_CREATED;
+                truncate = exists;
+                break;
+            case FILE_SUPERSEDE:
+                action = exists ? FILE_SUPERSEDED : FILE_CREATED;
+                truncate = exists;
+                break;
+            default:
+                throw new StatusException(STATUS_NOT_SUPPORTED);
+        }
+        if (truncate && is_dir) throw new StatusException(STATUS_FILE_IS_A_DIRECTORY);
+
+        boolean directory;
+        FileChannel channel = null;
+        if (action == FILE_CREATED) {
+            if (want_dir) {
+                Files.createDirectory(path);
+                directory = true;
+            } else {
+                channel = openChannel(path, true);
+                directory = false;
+            }
+        } else if (is_dir) {
+            directory = true;
+        } else {
+            channel = openChannel(path, false);
+            if (truncate) channel.truncate(0);
+            directory = false;
+        }
+
+        boolean delete_on_close = (options & FILE_DELETE_ON_CLOSE) != 0;
+        if (delete_on_close && directory && !isEmptyDirectory(path)) {
+            if (channel != null) channel.close();
+            throw new StatusException(STATUS_DIRECTORY_NOT_EMPTY);
+        }
+        long id = mNextFileId.getAndIncrement();
+        JcifsStandInOpen open = new JcifsStandInOpen(id, share, path, name, directory, channel, delete_on_close);
+        mOpens.put(id, open);
+
+        JcifsStandInFileInfo info = JcifsStandInFileInfo.read(path, getLastName(name));
+        JcifsStandInBuffer body = new JcifsStandInBuffer(96);
+        body.putShort(89);
+        body.putByte(0);
+        body.putByte(0);
+        body.putInt(action);
+        putTimes(body, info);
+        body.putLong(info.allocationSize);
+        body.putLong(info.endOfFile);
+        body.putInt(info.attributes);
+        body.putInt(0);
+        body.putLong(id);
+        body.putLong(id);
+        body.putInt(0);
+        body.putInt(0);
+        body.putByte(0);
+        Reply reply = new Reply(STATUS_SUCCESS, body);
+        reply.fileId = id;
+        return reply;
+    }
+
+    private static FileChannel openChannel(Path path, boolean create) throws IOException {
+        try {
+            if (create) return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (AccessDeniedException e) {
+            if (create) throw e;
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+    }
+
+    private static boolean isEmptyDirectory(Path path) throws IOException {
+        DirectoryStream<Path> ds = Files.newDirectoryStream(path);
+        try {
+            return !ds.iterator().hasNext();
+        } finally {
+            ds.close();
+        }
+    }
+
+    private static void putTimes(JcifsStandInBuffer body, JcifsStandInFileInfo info) {
+        body.putLong(info.creationTime);
+        body.putLong(info.lastAccessTime);
+        body.putLong(info.lastWriteTime);
+        body.putLong(info.changeTime);
+    }
+
+    private JcifsStandInOpen getOpen(byte[] msg, int file_id_pos, long related_file_id) throws StatusException {
+        long persistent = JcifsStandInBuffer.getLong(msg, file_id_pos);
+        long volatile_id = JcifsStandInBuffer.getLong(msg, file_id_pos + 8);
+        if (persistent == -1 && volatile_id == -1) volatile_id = related_file_id;
+        JcifsStandInOpen open = mOpens.get(volatile_id);
+        if (open == null) throw new StatusException(STATUS_FILE_CLOSED);
+        return open;
+    }
+
+    private Reply closeFile(byte[] msg, int b, long related_file_id) throws StatusException, IOException {
+        int flags = JcifsStandInBuffer.getShort(msg, b + 2);
+        JcifsStandInOpen open = getOpen(msg, b + 8, related_file_id);
+        mOpens.remove(open.id);
+        JcifsStandInFileInfo info = null;
+        if ((flags & SMB2_CLOSE_FLAG_POSTQUERY_ATTRIB) != 0) {
+            try {
+                info = JcifsStandInFileInfo.read(open.getPath(), getLastName(open.getName()));
+            } catch (NoSuchFileException e) {
+                info = null;
+            }
+        }
+        closeOpen(open);
+        JcifsStandInBuffer body = new JcifsStandInBuffer(60);
+        body.putShort(60);
+        body.putShort(info != null ? SMB2_CLOSE_FLAG_POSTQUERY_ATTRIB : 0);
+        body.putInt(0);
+        if (info != null) {
+            putTimes(body, info);
+            body.putLong(info.allocationSize);
+            body.putLong(info.endOfFile);
+            body.putInt(info.attributes);
+        } else {
+            body.putZero(52);
+        }
+        return new Reply(STATUS_SUCCESS, body);
+    }
+
+    private static void closeOpen(JcifsStandInOpen open) throws IOException {
+        open.close();
+        if (open.isDeleteOnClose()) {
+            try {
+                Files.deleteIfExists(open.getPath());
+            } catch (DirectoryNotEmptyException e) {
+                // An entry was created after the delete was requested, the directory stays like on Windows
+            }
+        }
+    }
+
+    private Reply read(byte[] msg, int b, long related_file_id) throws StatusException, IOException {
+        int length = JcifsStandInBuffer.getInt(msg, b + 4);
+        long offset = JcifsStandInBuffer.getLong(msg, b + 8);
+        JcifsStandInOpen open = getOpen(msg, b + 16, related_file_id);
+        FileChannel channel = open.getChannel();
+        if (channel == null) throw new StatusException(STATUS_INVALID_DEVICE_REQUEST);
+        long size = channel.size();
+        if (offset >= size) throw new StatusException(STATUS_END_OF_FILE);
+        int n = (int) Math.min(length, size - offset);
+        JcifsStandInBuffer body = new JcifsStandInBuffer(16 + n);
+        body.putShort(17);
+        body.putByte(SMB2_HEADER_SIZE + 16);
+        body.putByte(0);
+        int length_pos = body.length();
+        body.putInt(0);
+        body.putInt(0);
+        body.putInt(0);
+        int data_pos = body.length();
+        body.putZero(n);
+        ByteBuffer bb = ByteBuffer.wrap(body.array(), data_pos, n);
+        int total = 0;
+        while (bb.hasRemaining()) {
+            int r = channel.read(bb, offset + total);
+            if (r < 0) break;
+            total += r;
+        }
+        if (total == 0) throw new StatusException(STATUS_END_OF_FILE);
+        body.setIntAt(length_pos, total);
+        JcifsStandInBuffer result = body;
+        if (total < n) {
+            result = new JcifsStandInBuffer(16 + total);
+            result.putBytes(body.array(), 0, data_pos + total);
+        }
+        return new Reply(STATUS_SUCCESS, result);
+    }
+
+    private Reply write(byte[] msg, int pos, int b, long related_file_id) throws StatusException, IOException {
+        int data_offset = JcifsStandInBuffer.getShort(msg, b + 2);
+        int length = JcifsStandInBuffer.getInt(msg, b + 4);
+        long offset = JcifsStandInBuffer.getLong(msg, b + 8);
+        JcifsStandInOpen open = getOpen(msg, b + 16, related_file_id);
+        FileChannel channel = open.getChannel();
+        if (channel == null) throw new StatusException(STATUS_INVALID_DEVICE_REQUEST);
+        ByteBuffer bb = ByteBuffer.wrap(msg, pos + data_offset, length);
+        long at = offset;
+        while (bb.hasRemaining()) at += channel.write(bb, at);
+        JcifsStandInBuffer body = new JcifsStandInBuffer(16);
+        body.putShort(17);
+        body.putShort(0);
+        body.putInt(length);
+        body.putInt(0);
+        body.putShort(0);
+        body.putShort(0);
+        return new Reply(STATUS_SUCCESS, body);
+    }
+
+    private Reply ioctl(byte[] msg, int pos, int b, long related_file_id) throws StatusException, IOException {
+        int ctl_code = JcifsStandInBuffer.getInt(msg, b + 4);
+        int input_offset = JcifsStandInBuffer.getInt(msg, b + 24);
+        int input_count = JcifsStandInBuffer.getInt(msg, b + 28);
+        JcifsStandInBuffer output = new JcifsStandInBuffer(32);
+        switch (ctl_code) {
+            case FSCTL_SRV_REQUEST_RESUME_KEY: {
+                JcifsStandInOpen open = getOpen(msg, b + 8, related_file_id);
+                output.putLong(open.id).putZero(16);
+                output.putInt(0);
+                break;
+            }
+            case FSCTL_SRV_COPYCHUNK:
+            case FSCTL_SRV_COPYCHUNK_WRITE: {
+                JcifsStandInOpen target = getOpen(msg, b + 8, related_file_id);
+                int in = pos + input_offset;
+                if (input_count < 32) throw new StatusException(STATUS_INVALID_DEVICE_REQUEST);
+                JcifsStandInOpen source = mOpens.get(JcifsStandInBuffer.getLong(msg, in));
+                if (source == null || source.getChannel() == null || target.getChannel() == null) {
+                    throw new StatusException(STATUS_OBJECT_NAME_NOT_FOUND);
+                }
+                int count = JcifsStandInBuffer.getInt(msg, in + 24);
+                long total = 0;
+                for (int i = 0; i < count; i++) {
+                    int c = in + 32 + i * 24;
+                    total += copyRange(source.getChannel(), JcifsStandInBuffer.getLong(msg, c),
+                            target.getChannel(), JcifsStandInBuffer.getLong(msg, c + 8), JcifsStandInBuffer.getInt(msg, c + 16));
+                }
+                output.putInt(count).putInt(0).putInt((int) total);
+                break;
+            }
+            case FSCTL_VALIDATE_NEGOTIATE_INFO:
+                output.putInt(mDialect == DIALECT_SMB202 ? 0 : SMB2_GLOBAL_CAP_LARGE_MTU);
+                output.putBytes(mServer.getServerGuid());
+                output.putShort(SMB2_NEGOTIATE_SIGNING_ENABLED);
+                output.putShort(mDialect);
+                break;
+            case FSCTL_DFS_GET_REFERRALS:
+                throw new StatusException(STATUS_NOT_FOUND);
+            default:
+                throw new StatusException(STATUS_INVALID_DEVICE_REQUEST);
+        }
+        JcifsStandInBuffer body = new JcifsStandInBuffer(48 + output.length());
+        body.putShort(49);
+        body.putShort(0);
+        body.putInt(ctl_code);
+        body.putBytes(msg, b + 8, 16);
+        body.putInt(SMB2_HEADER_SIZE + 48);
+        body.putInt(0);
+        body.putInt(SMB2_HEADER_SIZE + 48);
+        body.putInt(output.length());
+        body.putInt(0);
+        body.putInt(0);
+        body.putBytes(output.array(), 0, output.length());
+        return new Reply(STATUS_SUCCESS, body);
+    }
+
+    private static long copyRange(FileChannel src, long src_offset, FileChannel dst, long dst_offset, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(Math.min(length, 1024 * 1024));
+        long done = 0;
+        while (done < length) {
+            bb.clear();
+            if (length - done < bb.capacity()) bb.limit((int) (length - done));
+            int n = src.read(bb, src_offset + done);
+            if (n <= 0) break;
+            bb.flip();
+            while (bb.hasRemaining()) dst.write(bb, dst_offset + done + bb.position());
+            done += n;
+        }
+        return done;
+    }
+
+    private Reply queryDirectory(byte[] msg, int pos, int b, long related_file_id) throws StatusException, IOException {
+        int info_class = msg[b + 2] & 0xff;
+        int flags = msg[b + 3] & 0xff;
+        int name_offset = JcifsStandInBuffer.getShort(msg, b + 24);
+        int name_length = JcifsStandInBuffer.getShort(msg, b + 26);
+        int output_length = JcifsStandInBuffer.getInt(msg, b + 28);
+        JcifsStandInOpen open = getOpen(msg, b + 8, related_file_id);
+        if (!open.directory) throw new StatusException(STATUS_NOT_A_DIRECTORY);
+        if (info_class != FILE_DIRECTORY_INFORMATION && info_class != FILE_FULL_DIRECTORY_INFORMATION &&
+                info_class != FILE_BOTH_DIRECTORY_INFORMATION && info_class != FILE_NAMES_INFORMATION &&
+                info_class != FILE_ID_BOTH_DIRECTORY_INFORMATION && info_class != FILE_ID_FULL_DIRECTORY_INFORMATION) {
+            throw new StatusException(STATUS_INVALID_INFO_CLASS);
+        }
+        String pattern = JcifsStandInBuffer.getString(msg, pos + name_offset, name_length);
+
+        JcifsStandInBuffer entries = new JcifsStandInBuffer(Math.min(output_length, 65536));
+        synchronized (open) {
+            boolean first = false;
+            if (open.enumeration == null || (flags & (SMB2_RESTART_SCANS | SMB2_REOPEN)) != 0) {
+                open.enumeration = listDirectory(open.getPath(), pattern);
+                open.enumerationIndex = 0;
+                first = true;
+            }
+            List<JcifsStandInFileInfo> list = open.enumeration;
+            if (open.enumerationIndex >= list.size()) {
+                throw new StatusException(first ? STATUS_NO_SUCH_FILE : STATUS_NO_MORE_FILES);
+            }
+            int last_entry = -1;
+            while (open.enumerationIndex < list.size()) {
+                JcifsStandInBuffer entry = new JcifsStandInBuffer(256);
+                putDirectoryEntry(entry, info_class, list.get(open.enumerationIndex));
+                int start = (entries.length() + 7) & ~7;
+                if (start + entry.length() > output_length) break;
+                if (last_entry >= 0) {
+                    entries.align(8);
+                    entries.setIntAt(last_entry, start - last_entry);
+                }
+                last_entry = entries.length();
+                entries.putBytes(entry.array(), 0, entry.length());
+                open.enumerationIndex++;
+                if ((flags & SMB2_RETURN_SINGLE_ENTRY) != 0) break;
+            }
+            if (last_entry < 0) throw new StatusException(STATUS_INFO_LENGTH_MISMATCH);
+        }
+        JcifsStandInBuffer body = new JcifsStandInBuffer(8 + entries.length());
+        body.putShort(9);
+        body.putShort(SMB2_HEADER_SIZE + 8);
+        body.putInt(entries.length());
+        body.putBytes(entries.array(), 0, entries.length());
+        return new Reply(STATUS_SUCCESS, body);
+    }
+
+    private static List<JcifsStandInFileInfo> listDirectory(Path dir, String pattern) throws IOException {
+        Pattern regex = null;
+        if (!pattern.isEmpty() && !pattern.equals("*")) regex = toRegex(pattern);
+        List<JcifsStandInFileInfo> list = new ArrayList<JcifsStandInFileInfo>();
+        DirectoryStream<Path> ds = Files.newDirectoryStream(dir);
+        try {
+            for (Path child : ds) {
+                String name = child.getFileName().toString();
+                if (regex != null && !regex.matcher(name).matches()) continue;
+                try {
+                    list.add(JcifsStandInFileInfo.read(child, name));
+                } catch (NoSuchFileException e) {
+                    // Deleted while listing
+                }
+            }
+        } finally {
+            ds.close();
+        }
+        Collections.sort(list, new Comparator<JcifsStandInFileInfo>() {
+            @Override
+            public int compare(JcifsStandInFileInfo o1, JcifsStandInFileInfo o2) {
+                return o1.name.compareTo(o2.name);
+            }
+        });
+        return list;
+    }
+
+    private static Pattern toRegex(String pattern) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*' || c == '<') sb.append(".*");
+            else if (c == '?' || c == '>') sb.append('.');
+            else if (c == '"') sb.append("\\.");
+            else sb.append(Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    }
+
+    private static void putDirectoryEntry(JcifsStandInBuffer entry, int info_class, JcifsStandInFileInfo info) {
+        byte[] name = info.name.getBytes(JcifsStandInBuffer.UTF_16LE);
+        entry.putInt(0);
+        entry.putInt(0);
+        if (info_class != FILE_NAMES_INFORMATION) {
+            putTimes(entry, info);
+            entry.putLong(info.endOfFile);
+            entry.putLong(info.allocationSize);
+            entry.putInt(info.attributes);
+        }
+        entry.putInt(name.length);
+        if (info_class != FILE_DIRECTORY_INFORMATION && info_class != FILE_NAMES_INFORMATION) entry.putInt(0);
+        if (info_class == FILE_BOTH_DIRECTORY_INFORMATION || info_class == FILE_ID_BOTH_DIRECTORY_INFORMATION) {
+            entry.putByte(0);
+            entry.putByte(0);
+            entry.putZero(24);
+        }
+        if (info_class == FILE_ID_BOTH_DIRECTORY_INFORMATION) {
+            entry.putShort(0);
+            entry.putLong(info.fileIndex);
+        } else if (info_class == FILE_ID_FULL_DIRECTORY_INFORMATION) {
+            entry.putInt(0);
+            entry.putLong(info.fileIndex);
+        }
+        entry.putBytes(name);
+    }
+
+    private Reply queryInfo(byte[] msg, int b, long related_file_id) throws StatusException, IOException {
+        int info_type = msg[b + 2] & 0xff;
+        int info_class = msg[b + 3] & 0xff;
+        int output_length = JcifsStandInBuffer.getInt(msg, b + 4);
+        JcifsStandInOpen open = getOpen(msg, b + 24, related_file_id);
+        JcifsStandInBuffer data = new JcifsStandInBuffer(128);
+        if (info_type == SMB2_0_INFO_FILE) {
+            queryFileInfo(open, info_class, data);
+        } else if (info_type == SMB2_0_INFO_FILESYSTEM) {
+            queryFsInfo(open, info_class, data);
+        } else if (info_type == SMB2_0_INFO_SECURITY) {
+            // Self relative descriptor with a NULL DACL, everyone has full access
+            data.putByte(1).putByte(0).putShort(0x8004).putInt(0).putInt(0).putInt(0).putInt(0);
+        } else {
+            throw new StatusException(STATUS_NOT_SUPPORTED);
+        }
+        int status = STATUS_SUCCESS;
+        int length = data.length();
+        if (length > output_length) {
+            if (info_class != FILE_ALL_INFORMATION && info_class != FILE_FS_VOLUME_INFORMATION &&
+                    info_class != FILE_FS_ATTRIBUTE_INFORMATION) {
+                throw new StatusException(STATUS_INFO_LENGTH_MISMATCH);
+            }
+            status = STATUS_BUFFER_OVERFLOW;
+            length = output_length;
+        }
+        JcifsStandInBuffer body = new JcifsStandInBuffer(8 + length);
+        body.putShort(9);
+        body.putShort(SMB2_HEADER_SIZE + 8);
+        body.putInt(length);
+        if (length == 0) body.putByte(0);
+        else body.putBytes(data.array(), 0, length);
+        return new Reply(status, body);
+    }
+
+    private static void queryFileInfo(JcifsStandInOpen open, int info_class, JcifsStandInBuffer data) throws StatusException, IOException {
+        JcifsStandInFileInfo info = JcifsStandInFileInfo.read(open.getPath(), getLastName(open.getName()));
+        switch (info_class) {
+            case FILE_BASIC_INFORMATION:
+                putBasic(data, info);
+                break;
+            case FILE_STANDARD_INFORMATION:
+                putStandard(data, info, open);
+                break;
+            case FILE_INTERNAL_INFORMATION:
+                data.putLong(info.fileIndex);
+                break;
+            case FILE_EA_INFORMATION:
+            case FILE_MODE_INFORMATION:
+            case FILE_ALIGNMENT_INFORMATION:
+                data.putInt(0);
+                break;
+            case FILE_ACCESS_INFORMATION:
+                data.putInt(FILE_ALL_ACCESS);
+                break;
+            case FILE_POSITION_INFORMATION:
+                data.putLong(0);
+                break;
+            case FILE_ALL_INFORMATION: {
+                putBasic(data, info);
+                putStandard(data, info, open);
+                data.putLong(info.fileIndex);
+                data.putInt(0);
+                data.putInt(FILE_ALL_ACCESS);
+                data.putLong(0);
+                data.putInt(0);
+                data.putInt(0);
+                byte[] name = ("\\" + open.getName()).getBytes(JcifsStandInBuffer.UTF_16LE);
+                data.putInt(name.length);
+                data.putBytes(name);
+                break;
+            }
+            case FILE_NETWORK_OPEN_INFORMATION:
+                putTimes(data, info);
+                data.putLong(info.allocationSize);
+                data.putLong(info.endOfFile);
+                data.putInt(info.attributes);
+                data.putInt(0);
+                break;
+            case FILE_ATTRIBUTE_TAG_INFORMATION:
+                data.putInt(info.attributes);
+                data.putInt(0);
+                break;
+            default:
+                throw new StatusException(STATUS_INVALID_INFO_CLASS);
+        }
+    }
+
+    private static void putBasic(JcifsStandInBuffer data, JcifsStandInFileInfo info) {
+        putTimes(data, info);
+        data.putInt(info.attributes);
+        data.putInt(0);
+    }
+
+    private static void putStandard(JcifsStandInBuffer data, JcifsStandInFileInfo info, JcifsStandInOpen open) {
+        data.putLong(info.allocationSize);
+        data.putLong(info.endOfFile);
+        data.putInt(1);
+        data.putByte(open.isDeleteOnClose() ? 1 : 0);
+        data.putByte(info.isDirectory() ? 1 : 0);
+        data.putShort(0);
+    }
+
+    private void queryFsInfo(JcifsStandInOpen open, int info_class, JcifsStandInBuffer data) throws StatusException, IOException {
+        FileStore store = Files.getFileStore(open.getPath());
+        long unit = (long) SECTOR_SIZE * SECTORS_PER_UNIT;
+        switch (info_class) {
+            case FILE_FS_VOLUME_INFORMATION: {
+                byte[] label = open.share.getBytes(JcifsStandInBuffer.UTF_16LE);
+                data.putLong(0);
+                data.putInt(open.share.toLowerCase(Locale.US).hashCode());
+                data.putInt(label.length);
+                data.putByte(0);
+                data.putByte(0);
+                data.putBytes(label);
+                break;
+            }
+            case FILE_FS_SIZE_INFORMATION:
+                data.putLong(store.getTotalSpace() / unit);
+                data.putLong(store.getUsableSpace() / unit);
+                data.putInt(SECTORS_PER_UNIT);
+                data.putInt(SECTOR_SIZE);
+                break;
+            case FILE_FS_DEVICE_INFORMATION:
+                // FILE_DEVICE_DISK
+                data.putInt(0x07);
+                data.putInt(0);
+                break;
+            case FILE_FS_ATTRIBUTE_INFORMATION: {
+                byte[] name = "NTFS".getBytes(JcifsStandInBuffer.UTF_16LE);
+                // FILE_CASE_SENSITIVE_SEARCH | FILE_CASE_PRESERVED_NAMES | FILE_UNICODE_ON_DISK
+                data.putInt(0x00000007);
+                data.putInt(255);
+                data.putInt(name.length);
+                data.putBytes(name);
+                break;
+            }
+            case FILE_FS_FULL_SIZE_INFORMATION:
+                data.putLong(store.getTotalSpace() / unit);
+                data.putLong(store.getUsableSpace() / unit);
+                data.putLong(store.getUnallocatedSpace() / unit);
+                data.putInt(SECTORS_PER_UNIT);
+                data.putInt(SECTOR_SIZE);
+                break;
+            default:
+                throw new StatusException(STATUS_INVALID_INFO_CLASS);
+        }
+    }
+
+    private Reply setInfo(byte[] msg, int pos, int b, long related_file_id) throws StatusException, IOException {
+        int info_type = msg[b + 2] & 0xff;
+        int info_class = msg[b + 3] & 0xff;
+        int buffer_length = JcifsStandInBuffer.getInt(msg, b + 4);
+        int buffer_offset = JcifsStandInBuffer.getShort(msg, b + 8);
+        JcifsStandInOpen open = getOpen(msg, b + 16, related_file_id);
+        int d = pos + buffer_offset;
+        if (info_type == SMB2_0_INFO_SECURITY) return empty(2);
+        if (info_type != SMB2_0_INFO_FILE) throw new StatusException(STATUS_NOT_SUPPORTED);
+        switch (info_class) {
+            case FILE_BASIC_INFORMATION:
+                if (buffer_length < 36) throw new StatusException(STATUS_INFO_LENGTH_MISMATCH);
+                setBasic(open, JcifsStandInBuffer.getLong(msg, d), JcifsStandInBuffer.getLong(msg, d + 8),
+                        JcifsStandInBuffer.getLong(msg, d + 16), JcifsStandInBuffer.getInt(msg, d + 32));
+                break;
+            case FILE_RENAME_INFORMATION: {
+                boolean replace = msg[d] != 0;
+                int name_length = JcifsStandInBuffer.getInt(msg, d + 16);
+                String name = JcifsStandInBuffer.getString(msg, d + 20, name_length);
+                if (name.startsWith("\\")) name = name.substring(1);
+                rename(open, name, replace);
+                break;
+            }
+            case FILE_DISPOSITION_INFORMATION: {
+                boolean delete = msg[d] != 0;
+                if (delete && open.directory && !isEmptyDirectory(open.getPath())) {
+                    throw new StatusException(STATUS_DIRECTORY_NOT_EMPTY);
+                }
+                open.setDeleteOnClose(delete);
+                break;
+            }
+            case FILE_END_OF_FILE_INFORMATION: {
+                long eof = JcifsStandInBuffer.getLong(msg, d);
+                FileChannel channel = open.getChannel();
+                if (channel == null) throw new StatusException(STATUS_INVALID_DEVICE_REQUEST);
+                if (eof < channel.size()) channel.truncate(eof);
+                else if (eof > channel.size()) channel.write(ByteBuffer.wrap(new byte[1]), eof - 1);
+                break;
+            }
+            case FILE_ALLOCATION_INFORMATION:
+                break;
+            default:
+                throw new StatusException(STATUS_INVALID_INFO_CLASS);
+        }
+        return empty(2);
+    }
+
+    private static void setBasic(JcifsStandInOpen open, long creation, long access, long write, int attributes) throws IOException {
+        BasicFileAttributeView view = Files.getFileAttributeView(open.getPath(), BasicFileAttributeView.class);
+        view.setTimes(toFileTime(write), toFileTime(access), toFileTime(creation));
+        if (attributes != 0 && !open.directory) {
+            boolean readonly = (attributes & JcifsStandInFileInfo.FILE_ATTRIBUTE_READONLY) != 0;
+            open.getPath().toFile().setWritable(!readonly);
+        }
+    }
+
+    /**
+     * @return null for 0 and -1, which leave the time unchanged
+     */
+    private static FileTime toFileTime(long file_time) {
+        if (file_time == 0 || file_time == -1 || file_time == -2) return null;
+        return FileTime.fromMillis(JcifsStandInFileInfo.toMillis(file_time));
+    }
+
+    private void rename(JcifsStandInOpen open, String name, boolean replace) throws StatusException, IOException {
+        Path root = mServer.getShareRoot(open.share);
+        if (root == null) throw new StatusException(STATUS_NETWORK_NAME_DELETED);
+        Path target = resolve(root, name);
+        if (target.equals(root)) throw new StatusException(STATUS_OBJECT_NAME_INVALID);
+        if (!Files.isDirectory(target.getParent())) throw new StatusException(STATUS_OBJECT_PATH_NOT_FOUND);
+        boolean same = target.equals(open.getPath());
+        if (!same && Files.exists(target)) {
+            if (!replace) throw new StatusException(STATUS_OBJECT_NAME_COLLISION);
+            if (Files.isDirectory(target)) throw new StatusException(STATUS_ACCESS_DENIED);
+        }
+        if (replace) Files.move(open.getPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        else Files.move(open.getPath(), target);
+        open.moveTo(target, name);
+    }
+
+    private static int toStatus(IOException e) {
+        if (e instanceof NoSuchFileException) return STATUS_OBJECT_NAME_NOT_FOUND;
+        if (e instanceof FileAlreadyExistsException) return STATUS_OBJECT_NAME_COLLISION;
+        if (e instanceof AccessDeniedException) return STATUS_ACCESS_DENIED;
+        if (e instanceof DirectoryNotEmptyException) return STATUS_DIRECTORY_NOT_EMPTY;
+        if (e instanceof NotDirectoryException) return STATUS_NOT_A_DIRECTORY;
+        return STATUS_UNEXPECTED_IO_ERROR;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.sentaroh.jcifs.bench.server;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Attributes of a local file in SMB2 form, FILETIME timestamps and FILE_ATTRIBUTE bits.
+ */
+final class JcifsStandInFileInfo {
+
+    final static int FILE_ATTRIBUTE_READONLY = 0x0001;
+    final static int FILE_ATTRIBUTE_HIDDEN = 0x0002;
+    final static int FILE_ATTRIBUTE_DIRECTORY = 0x0010;
+    final static int FILE_ATTRIBUTE_ARCHIVE = 0x0020;
+
+    final static private long FILETIME_EPOCH_DIFF_MILLIS = 11644473600000L;
+    final static private int CLUSTER_SIZE = 4096;
+
+    final String name;
+    final long creationTime;
+    final long lastAccessTime;
+    final long lastWriteTime;
+    final long changeTime;
+    final long endOfFile;
+    final long allocationSize;
+    final int attributes;
+    final long fileIndex;
+
+    private JcifsStandInFileInfo(String name, BasicFileAttributes attr, boolean writable) {
+        this.name = name;
+        this.creationTime = toFileTime(attr.creationTime().toMillis());
+        this.lastAccessTime = toFileTime(attr.lastAccessTime().toMillis());
+        this.lastWriteTime = toFileTime(attr.lastModifiedTime().toMillis());
+        this.changeTime = this.lastWriteTime;
+        boolean dir = attr.isDirectory();
+        this.endOfFile = dir ? 0 : attr.size();
+        this.allocationSize = dir ? 0 : (attr.size() + CLUSTER_SIZE - 1) / CLUSTER_SIZE * CLUSTER_SIZE;
+        int bits = dir ? FILE_ATTRIBUTE_DIRECTORY : FILE_ATTRIBUTE_ARCHIVE;
+        if (!writable) bits |= FILE_ATTRIBUTE_READONLY;
+        if (name.startsWith(".")) bits |= FILE_ATTRIBUTE_HIDDEN;
+        this.attributes = bits;
+        Object key = attr.fileKey();
+        this.fileIndex = key == null ? 0 : key.hashCode() & 0xffffffffL;
+    }
+
+    static JcifsStandInFileInfo read(Path path, String name) throws IOException {
+        BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        return new JcifsStandInFileInfo(name, attr, Files.isWritable(path));
+    }
+
+    boolean isDirectory() {
+        return (attributes & FILE_ATTRIBUTE_DIRECTORY) != 0;
+    }
+
+    static long toFileTime(long millis) {
+        return (millis + FILETIME_EPOCH_DIFF_MILLIS) * 10000L;
+    }
+
+    static long toMillis(long file_time) {
+        return file_time / 10000L - FILETIME_EPOCH_DIFF_MILLIS;
+    }
+
+}
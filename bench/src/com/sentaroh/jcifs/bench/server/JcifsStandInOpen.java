@@ -0,0 +1,89 @@
+package com.sentaroh.jcifs.bench.server;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A file or directory opened by SMB2 CREATE. Reads and writes use positional FileChannel calls, so requests
+ * of several client threads on one handle may run at the same time. The directory enumeration is synchronized
+ * by the caller.
+ */
+final class JcifsStandInOpen {
+
+    final long id;
+    final String share;
+    final boolean directory;
+
+    private volatile Path mPath;
+    private volatile String mName;
+    private final FileChannel mChannel;
+    private volatile boolean mDeleteOnClose;
+
+    List<JcifsStandInFileInfo> enumeration = null;
+    int enumerationIndex = 0;
+
+    JcifsStandInOpen(long id, String share, Path path, String name, boolean directory, FileChannel channel, boolean delete_on_close) {
+        this.id = id;
+        this.share = share;
+        this.directory = directory;
+        mPath = path;
+        mName = name;
+        mChannel = channel;
+        mDeleteOnClose = delete_on_close;
+    }
+
+    Path getPath() {
+        return mPath;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    void moveTo(Path path, String name) {
+        mPath = path;
+        mName = name;
+    }
+
+    FileChannel getChannel() {
+        return mChannel;
+    }
+
+    boolean isDeleteOnClose() {
+        return mDeleteOnClose;
+    }
+
+    void setDeleteOnClose(boolean delete) {
+        mDeleteOnClose = delete;
+    }
+
+    void close() throws IOException {
+        if (mChannel != null) mChannel.close();
+    }
+
+}
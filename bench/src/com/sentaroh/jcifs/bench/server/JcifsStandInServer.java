@@ -0,0 +1,299 @@
+package com.sentaroh.jcifs.bench.server;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process SMB2 server that serves local directories as shares, for benchmarks without a real server.
+ * It implements the commands JcifsFile uses with the jcifs-ng backends (negotiate, session setup, tree connect,
+ * create, close, read, write, query/set info, query directory and server-side copy) over direct TCP on the
+ * loopback interface.
+ *
+ * Only the SMB 2.0.2 and 2.1 dialects are offered, without signing or encryption, and any user is accepted
+ * through NTLMSSP without checking the password. The client must therefore use JCIFS_FILE_SMB201 or
+ * JCIFS_FILE_SMB211, or JCIFS_FILE_SMB212/SMB214 which negotiate 2.1 with this server, and the properties of
+ * getClientProperties() (JcifsAuth.createShared). SMB1 is not served.
+ *
+ * setLatencyMillis() adds a delay to every request the server receives (a compounded request counts as one),
+ * setBandwidth() limits the bytes per second of each direction. Together they emulate a LAN or WAN link, so
+ * round trip and throughput effects can be measured repeatably on one machine.
+ *
+ * <pre>
+ * JcifsStandInServer server = new JcifsStandInServer();
+ * server.addShare("bench", Paths.get("/tmp/bench"));
+ * server.setLatencyMillis(2);
+ * server.start();
+ * JcifsAuth auth = JcifsAuth.createShared(JcifsFile.JCIFS_FILE_SMB211, null, "user", "pass", server.getClientProperties());
+ * JcifsFile file = new JcifsFile(server.getUrl("bench") + "file.txt", auth);
+ * </pre>
+ */
+public class JcifsStandInServer implements Closeable {
+
+    final static private int DEFAULT_MAX_IO_SIZE = 1024 * 1024;
+
+    private final Map<String, Path> mShares = new ConcurrentHashMap<String, Path>();
+    private final Set<JcifsStandInConnection> mConnections =
+            Collections.newSetFromMap(new ConcurrentHashMap<JcifsStandInConnection, Boolean>());
+    private final JcifsStandInThrottle mUpstream = new JcifsStandInThrottle();
+    private final JcifsStandInThrottle mDownstream = new JcifsStandInThrottle();
+    private final AtomicLong mNextSessionId = new AtomicLong(0x10001);
+    private final AtomicLong mRequestCount = new AtomicLong(0);
+    private final byte[] mServerGuid = new byte[16];
+
+    private int mMaxIoSize = DEFAULT_MAX_IO_SIZE;
+    private int mPort = 0;
+    private ServerSocket mServerSocket = null;
+    private ExecutorService mExecutor = null;
+    private Thread mAcceptThread = null;
+
+    public JcifsStandInServer() {
+        new SecureRandom().nextBytes(mServerGuid);
+    }
+
+    /**
+     * Serve a directory. Share names are case insensitive, like on Windows.
+     */
+    public JcifsStandInServer addShare(String name, Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) throw new IOException("Not a directory: " + dir);
+        mShares.put(name.toUpperCase(Locale.US), dir.toAbsolutePath());
+        return this;
+    }
+
+    /**
+     * Delay added to every request received, 0 for none
+     */
+    public void setLatencyMillis(long millis) {
+        setLatencyNanos(millis * 1000000L);
+    }
+
+    public void setLatencyNanos(long nanos) {
+        mDownstream.setLatencyNanos(nanos);
+    }
+
+    public long getLatencyNanos() {
+        return mDownstream.getLatencyNanos();
+    }
+
+    /**
+     * Bytes per second of each direction including the SMB2 headers, 0 for unlimited
+     */
+    public void setBandwidth(long bytes_per_second) {
+        mUpstream.setBytesPerSecond(bytes_per_second);
+        mDownstream.setBytesPerSecond(bytes_per_second);
+    }
+
+    public long getBandwidth() {
+        return mDownstream.getBytesPerSecond();
+    }
+
+    /**
+     * MaxReadSize/MaxWriteSize/MaxTransactSize offered for SMB 2.1, must be called before start()
+     */
+    public void setMaxIoSize(int size) {
+        mMaxIoSize = size;
+    }
+
+    /**
+     * Port to listen on, 0 (default) for an ephemeral port. Must be called before start().
+     */
+    public void setPort(int port) {
+        mPort = port;
+    }
+
+    /**
+     * Listen on the loopback interface
+     */
+    public synchronized void start() throws IOException {
+        if (mServerSocket != null) throw new IllegalStateException("Already started");
+        mServerSocket = new ServerSocket();
+        mServerSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), mPort));
+        mExecutor = Executors.newCachedThreadPool(new StandInThreadFactory("JcifsStandIn-worker-"));
+        final ServerSocket server_socket = mServerSocket;
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept(server_socket);
+            }
+        }, "JcifsStandIn-accept");
+        mAcceptThread.setDaemon(true);
+        mAcceptThread.start();
+    }
+
+    private void accept(ServerSocket server_socket) {
+        AtomicInteger count = new AtomicInteger(0);
+        while (!server_socket.isClosed()) {
+            Socket socket = null;
+            try {
+                socket = server_socket.accept();
+                JcifsStandInConnection conn = new JcifsStandInConnection(this, socket);
+                mConnections.add(conn);
+                Thread t = new Thread(conn, "JcifsStandIn-conn-" + count.incrementAndGet());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException ignore) {
+                        // Nothing more to clean up
+                    }
+                }
+            }
+        }
+    }
+
+    public int getPort() {
+        if (mServerSocket == null) throw new IllegalStateException("Not started");
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * @return smb://127.0.0.1:port/share/
+     */
+    public String getUrl(String share) {
+        return "smb://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + getPort() + "/" + share + "/";
+    }
+
+    /**
+     * Client properties needed by this server: no DFS referrals, no signing and raw NTLM. The SPNEGO
+     * encoding of jcifs-ng fails with current BouncyCastle releases, raw NTLM only needs its NTLM classes.
+     */
+    public Properties getClientProperties() {
+        Properties prop = new Properties();
+        prop.setProperty("jcifs.smb.client.dfs.disabled", "true");
+        prop.setProperty("jcifs.smb.client.signingPreferred", "false");
+        prop.setProperty("jcifs.smb.client.ipcSigningEnforced", "false");
+        prop.setProperty("jcifs.smb.useRawNTLM", "true");
+        return prop;
+    }
+
+    /**
+     * @return Number of messages received, a compounded request counts as one
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    @Override
+    public void close() {
+        ServerSocket server_socket;
+        ExecutorService executor;
+        synchronized (this) {
+            server_socket = mServerSocket;
+            executor = mExecutor;
+            mServerSocket = null;
+            mExecutor = null;
+        }
+        if (server_socket == null) return;
+        try {
+            server_socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        for (JcifsStandInConnection conn : mConnections) conn.close();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    Path getShareRoot(String share) {
+        return mShares.get(share.toUpperCase(Locale.US));
+    }
+
+    JcifsStandInThrottle getUpstream() {
+        return mUpstream;
+    }
+
+    JcifsStandInThrottle getDownstream() {
+        return mDownstream;
+    }
+
+    int getMaxIoSize() {
+        return mMaxIoSize;
+    }
+
+    byte[] getServerGuid() {
+        return mServerGuid;
+    }
+
+    long nextSessionId() {
+        return mNextSessionId.getAndIncrement();
+    }
+
+    void countRequest() {
+        mRequestCount.incrementAndGet();
+    }
+
+    void execute(Runnable task) {
+        ExecutorService executor = mExecutor;
+        if (executor == null) throw new RejectedExecutionException("Server closed");
+        executor.execute(task);
+    }
+
+    void removeConnection(JcifsStandInConnection conn) {
+        mConnections.remove(conn);
+    }
+
+    private static class StandInThreadFactory implements ThreadFactory {
+        private final String mPrefix;
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        StandInThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, mPrefix + mCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
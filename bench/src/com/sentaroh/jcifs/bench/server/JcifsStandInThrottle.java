@@ -0,0 +1,76 @@
+package com.sentaroh.jcifs.bench.server;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+/**
+ * Link emulation of the stand-in server. delay() adds the per-request latency, transfer() holds a thread until
+ * the bytes would have passed a link of the configured bandwidth. Each direction uses its own instance,
+ * so uploads and downloads do not share the budget, like a full duplex link.
+ */
+final class JcifsStandInThrottle {
+
+    private volatile long mLatencyNanos = 0;
+    private volatile long mBytesPerSecond = 0;
+
+    private long mNextFreeNanos = 0;
+
+    void setLatencyNanos(long nanos) {
+        mLatencyNanos = nanos;
+    }
+
+    long getLatencyNanos() {
+        return mLatencyNanos;
+    }
+
+    void setBytesPerSecond(long bytes_per_second) {
+        mBytesPerSecond = bytes_per_second;
+    }
+
+    long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    void delay() throws InterruptedException {
+        sleepNanos(mLatencyNanos);
+    }
+
+    void transfer(int bytes) throws InterruptedException {
+        long rate = mBytesPerSecond;
+        if (rate <= 0 || bytes <= 0) return;
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, mNextFreeNanos);
+            mNextFreeNanos = start + bytes * 1000000000L / rate;
+            wait = mNextFreeNanos - now;
+        }
+        sleepNanos(wait);
+    }
+
+    private static void sleepNanos(long nanos) throws InterruptedException {
+        if (nanos <= 0) return;
+        Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.sentaroh.jcifs.jfr;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import com.sentaroh.jcifs.JcifsFile;
+import com.sentaroh.jcifs.JcifsMetrics;
+import com.sentaroh.jcifs.JcifsMetricsRecorder;
+import com.sentaroh.jcifs.JcifsTracer;
+
+import jdk.jfr.EventType;
+
+/**
+ * Emits JDK Flight Recorder events for the operations of JcifsFile and the lookups of JcifsUtil:
+ * com.sentaroh.jcifs.Operation, com.sentaroh.jcifs.StreamChunk and com.sentaroh.jcifs.Lookup.
+ * While no recording has the event enabled begin() returns null and nothing is allocated.
+ * <p>
+ * Call {@link #install()} before the JcifsFile to trace are created, then start a recording, e.g.
+ * -XX:StartFlightRecording or jcmd PID JFR.start, and read it with "jfr print --events com.sentaroh.jcifs.*".
+ */
+public class JcifsJfrTracer implements JcifsTracer {
+
+    private static final JcifsJfrTracer mInstance = new JcifsJfrTracer();
+
+    private final EventType mOperationType = EventType.getEventType(JcifsOperationEvent.class);
+    private final EventType mStreamType = EventType.getEventType(JcifsStreamEvent.class);
+    private final EventType mNetworkType = EventType.getEventType(JcifsNetworkEvent.class);
+
+    private JcifsJfrTracer() {
+    }
+
+    /**
+     * Set the tracer to JcifsFile, for the JcifsFile created from now on
+     */
+    public static void install() {
+        JcifsFile.setTracer(mInstance);
+    }
+
+    public static void uninstall() {
+        if (JcifsFile.getTracer() == mInstance) JcifsFile.setTracer(null);
+    }
+
+    @Override
+    public Object begin(int operation, int smb_level, String url) {
+        JcifsEvent event;
+        if (operation == JcifsMetrics.OP_READ || operation == JcifsMetrics.OP_WRITE) {
+            if (!mStreamType.isEnabled()) return null;
+            event = new JcifsStreamEvent();
+        } else if (operation >= JcifsMetrics.OP_RESOLVE_NAME) {
+            if (!mNetworkType.isEnabled()) return null;
+            event = new JcifsNetworkEvent();
+        } else {
+            if (!mOperationType.isEnabled()) return null;
+            event = new JcifsOperationEvent();
+        }
+        event.begin();
+        event.url = url;
+        event.level = smb_level;
+        event.operation = JcifsMetricsRecorder.getOperationName(operation);
+        return event;
+    }
+
+    @Override
+    public void end(Object span, boolean success, long bytes, int nt_status) {
+        JcifsEvent event = (JcifsEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.success = success;
+            event.bytes = bytes;
+            event.ntStatus = nt_status;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,388 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous view of a JcifsFile. Each method runs the JcifsFile method of the same name on the executor
+ * and returns a CompletableFuture, that is completed exceptionally with the JcifsException on failure.
+ * The SMB backends are blocking, so the executor thread is occupied for the duration of the request; on Java 21
+ * or later {@link #newVirtualThreadExecutor()} lets many requests be in flight without a platform thread each.
+ */
+public class AsyncJcifsFile {
+    final static public int DEFAULT_EXECUTOR_THREADS = 8;
+    final static private long DEFAULT_EXECUTOR_KEEP_ALIVE_MS = 60000;
+
+    private static ExecutorService mDefaultExecutor = null;
+
+    private final JcifsFile mFile;
+    private final Executor mExecutor;
+
+    private interface Operation<T> {
+        T run() throws JcifsException;
+    }
+
+    /**
+     * Use the shared default executor, DEFAULT_EXECUTOR_THREADS daemon threads with a queue, so operations beyond
+     * that number wait for a thread. Pass {@link #newVirtualThreadExecutor()} or an own executor to run more at once.
+     */
+    public AsyncJcifsFile(JcifsFile file) {
+        this(file, getDefaultExecutor());
+    }
+
+    /**
+     * @param file     The file
+     * @param executor Executor that runs the operations
+     */
+    public AsyncJcifsFile(JcifsFile file, Executor executor) {
+        if (file == null) throw new IllegalArgumentException("file is null.");
+        if (executor == null) throw new IllegalArgumentException("executor is null.");
+        mFile = file;
+        mExecutor = executor;
+    }
+
+    public JcifsFile getFile() {
+        return mFile;
+    }
+
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    synchronized private static ExecutorService getDefaultExecutor() {
+        if (mDefaultExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_THREADS,
+                    DEFAULT_EXECUTOR_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread th = new Thread(r);
+                    th.setName("AsyncJcifsFile-" + mCount.incrementAndGet());
+                    th.setDaemon(true);
+                    return th;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            mDefaultExecutor = executor;
+        }
+        return mDefaultExecutor;
+    }
+
+    /**
+     * @return true if the runtime provides virtual threads (Java 21 or later)
+     */
+    public static boolean isVirtualThreadAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor that starts a virtual thread for each operation. The caller shuts it down.
+     *
+     * @return The executor
+     * @throws JcifsException The runtime is older than Java 21
+     */
+    public static ExecutorService newVirtualThreadExecutor() throws JcifsException {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new JcifsException("Virtual threads require Java 21 or later.");
+        } catch (Exception e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(final Operation<T> op) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.complete(op.run());
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public CompletableFuture<Boolean> exists() {
+        return submit(new Operation<Boolean>() {
+            @Override
+            public Boolean run() throws JcifsException {
+                return mFile.exists();
+            }
+        });
+    }
+
+    public CompletableFuture<Void> delete() {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.delete();
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> mkdir() {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.mkdir();
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> mkdirs() {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.mkdirs();
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> createNew() {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.createNew();
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> connect() {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.connect();
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> getAttributes() {
+        return submit(new Operation<Integer>() {
+            @Override
+            public Integer run() throws JcifsException {
+                return mFile.getAttributes();
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> getType() {
+        return submit(new Operation<Integer>() {
+            @Override
+            public Integer run() throws JcifsException {
+                return mFile.getType();
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> canRead() {
+        return submit(new Operation<Boolean>() {
+            @Override
+            public Boolean run() throws JcifsException {
+                return mFile.canRead();
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> canWrite() {
+        return submit(new Operation<Boolean>() {
+            @Override
+            public Boolean run() throws JcifsException {
+                return mFile.canWrite();
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> isDirectory() {
+        return submit(new Operation<Boolean>() {
+            @Override
+            public Boolean run() throws JcifsException {
+                return mFile.isDirectory();
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> isFile() {
+        return submit(new Operation<Boolean>() {
+            @Override
+            public Boolean run() throws JcifsException {
+                return mFile.isFile();
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> isHidden() {
+        return submit(new Operation<Boolean>() {
+            @Override
+            public Boolean run() throws JcifsException {
+                return mFile.isHidden();
+            }
+        });
+    }
+
+    public CompletableFuture<Long> length() {
+        return submit(new Operation<Long>() {
+            @Override
+            public Long run() throws JcifsException {
+                return mFile.length();
+            }
+        });
+    }
+
+    public CompletableFuture<Long> getLastModified() {
+        return submit(new Operation<Long>() {
+            @Override
+            public Long run() throws JcifsException {
+                return mFile.getLastModified();
+            }
+        });
+    }
+
+    public CompletableFuture<Void> setLastModified(final long lm) {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.setLastModified(lm);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<String[]> list() {
+        return submit(new Operation<String[]>() {
+            @Override
+            public String[] run() throws JcifsException {
+                return mFile.list();
+            }
+        });
+    }
+
+    public CompletableFuture<JcifsFile[]> listFiles() {
+        return submit(new Operation<JcifsFile[]>() {
+            @Override
+            public JcifsFile[] run() throws JcifsException {
+                return mFile.listFiles();
+            }
+        });
+    }
+
+    public CompletableFuture<Void> renameTo(final JcifsFile d) {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.renameTo(d);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> copyTo(final JcifsFile d) {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.copyTo(d);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> walk(final JcifsFileVisitor visitor, final JcifsWalkOptions options) {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.walk(visitor, options);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Long> transferTo(final Path local) {
+        return submit(new Operation<Long>() {
+            @Override
+            public Long run() throws JcifsException {
+                return mFile.transferTo(local);
+            }
+        });
+    }
+
+    public CompletableFuture<Long> transferFrom(final Path local) {
+        return submit(new Operation<Long>() {
+            @Override
+            public Long run() throws JcifsException {
+                return mFile.transferFrom(local);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> downloadTo(final Path local, final JcifsTransferOptions options) {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.downloadTo(local, options);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> uploadFrom(final Path local, final JcifsTransferOptions options) {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws JcifsException {
+                mFile.uploadFrom(local, options);
+                return null;
+            }
+        });
+    }
+}
@@ -23,7 +23,9 @@ OTHER DEALINGS IN THE SOFTWARE.
 
 */
 
+import java.lang.reflect.Field;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 public class JcifsAuth {
     final static public int JCIFS_FILE_SMB1 = 1;
@@ -40,6 +42,34 @@ public class JcifsAuth {
 
     private String mDomain = null, mUserName = null, mUserPass = null;
 
+    private JcifsContextRegistry.SharedContext mSharedContext = null;
+    private boolean mClosed = false;
+    private JcifsPerformanceProfile mProfile = null;
+    private volatile JcifsMetadataCache mMetadataCache = null;
+    private volatile JcifsNegativeLookupCache mNegativeLookupCache = null;
+    private volatile boolean mAttributeSnapshotEnabled = false;
+    private volatile JcifsMetrics mMetrics = null;
+    private JcifsWarmUp mWarmUp = null;
+    private volatile long mAttrExpirationPeriod = -1;
+
+    final static private long DEFAULT_SO_TIMEOUT = 35000;
+    final static private long DEFAULT_ATTR_EXPIRATION_PERIOD = 5000;
+    final static private long MIN_KEEP_ALIVE_MILLIS = 1000;
+
+    final static private String[] TUNING_PROPERTY_NAMES = new String[]{
+            JcifsPerformanceProfile.PROP_RCV_BUF_SIZE, JcifsPerformanceProfile.PROP_SND_BUF_SIZE,
+            JcifsPerformanceProfile.PROP_MAX_MPX_COUNT, JcifsPerformanceProfile.PROP_TCP_NODELAY,
+            JcifsPerformanceProfile.PROP_RESPONSE_TIMEOUT, JcifsPerformanceProfile.PROP_SO_TIMEOUT,
+            JcifsPerformanceProfile.PROP_CONN_TIMEOUT, JcifsPerformanceProfile.PROP_ATTR_EXPIRATION_PERIOD,
+            JcifsPerformanceProfile.PROP_LIST_SIZE, JcifsPerformanceProfile.PROP_LIST_COUNT};
+    // Defaults of jcifs-1.3.17 for TUNING_PROPERTY_NAMES, in the same order
+    final static private String[] SMB1_TUNING_DEFAULTS = new String[]{
+            "65535", "65535",
+            "10", "false",
+            "30000", "35000",
+            "35000", "5000",
+            "65535", "200"};
+
     /**
      * SMB1 or SMB2 Constructor
      *
@@ -431,6 +461,369 @@ public class JcifsAuth {
         }
     }
 
+    /**
+     * Constructor with a performance profile
+     *
+     * @param smb_level  JCIFS_FILE_SMB1 to JCIFS_FILE_SMB214
+     * @param domain     A domain name
+     * @param user       A user name
+     * @param pass       A password for user
+     * @param profile    Transport tuning. SMB1 (jcifs-1.3.17) has only a process wide configuration, the profile is
+     *                   applied to it and is effective only if no SMB1 connection was made before.
+     */
+    @SuppressWarnings("deprecation")
+    public JcifsAuth(int smb_level, String domain, String user, String pass, JcifsPerformanceProfile profile) {
+        mSmbLevel = smb_level;
+        mDomain = domain;
+        mUserName = user;
+        mUserPass = pass;
+        mProfile = profile;
+        Properties profile_prop = profile.getProperties(smb_level);
+        if (isSmb1()) {
+            for (String name : profile_prop.stringPropertyNames()) jcifs.Config.setProperty(name, profile_prop.getProperty(name));
+            mSmb1Auth = new jcifs.smb.NtlmPasswordAuthentication(domain, user, pass);
+        } else {
+            Properties prop = getDefaultProperties(smb_level);
+            prop.putAll(profile_prop);
+            try {
+                setContext(JcifsContextRegistry.createContext(smb_level, domain, user, pass, prop));
+            } catch (JcifsException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private JcifsAuth(int smb_level, String domain, String user, String pass, JcifsContextRegistry.SharedContext shared) {
+        mSmbLevel = smb_level;
+        mDomain = domain;
+        mUserName = user;
+        mUserPass = pass;
+        mSharedContext = shared;
+        setContext(shared.getContext());
+    }
+
+    private void setContext(Object context) {
+        if (isSmb201()) mSmb201Auth = (jcifsng.CIFSContext) context;
+        else if (isSmb211()) mSmb211Auth = (jcifsng211.CIFSContext) context;
+        else if (isSmb212()) mSmb212Auth = (jcifsng212.CIFSContext) context;
+        else if (isSmb214()) mSmb214Auth = (jcifsng214.CIFSContext) context;
+    }
+
+    /**
+     * Create a JcifsAuth that shares its CIFSContext, and so the transport pool and sessions, with other
+     * JcifsAuth created by this method for the same SMB level, domain, user and password.
+     *
+     * @param smb_level  JCIFS_FILE_SMB1 to JCIFS_FILE_SMB214
+     * @param domain     A domain name
+     * @param user       A user name
+     * @param pass       A password for user
+     * @throws JcifsException
+     */
+    public static JcifsAuth createShared(int smb_level, String domain, String user, String pass) throws JcifsException {
+        return createShared(smb_level, domain, user, pass, (Properties) null);
+    }
+
+    /**
+     * Create a JcifsAuth that shares its CIFSContext, and so the transport pool and sessions, with other
+     * JcifsAuth created by this method for the same SMB level, domain, user, password and properties.
+     * The context is reference counted, call close() when the JcifsAuth is no longer used.
+     * SMB1 (jcifs-1.3.17) already pools its transports process wide, the result is the same as the constructor.
+     *
+     * @param smb_level  JCIFS_FILE_SMB1 to JCIFS_FILE_SMB214
+     * @param domain     A domain name
+     * @param user       A user name
+     * @param pass       A password for user
+     * @param prop       jcifs option property, null is use default. minVersion and maxVersion default to the SMB level.
+     * @throws JcifsException
+     */
+    public static JcifsAuth createShared(int smb_level, String domain, String user, String pass, Properties prop) throws JcifsException {
+        if (smb_level==JCIFS_FILE_SMB1) return new JcifsAuth(smb_level, domain, user, pass);
+        Properties prop_new = getDefaultProperties(smb_level);
+        if (prop != null) {
+            for (String name : prop.stringPropertyNames()) prop_new.setProperty(name, prop.getProperty(name));
+        }
+        return new JcifsAuth(smb_level, domain, user, pass, JcifsContextRegistry.acquire(smb_level, domain, user, pass, prop_new));
+    }
+
+    /**
+     * createShared with a performance profile, see {@link #createShared(int, String, String, String, Properties)}
+     *
+     * @param smb_level  JCIFS_FILE_SMB1 to JCIFS_FILE_SMB214
+     * @param domain     A domain name
+     * @param user       A user name
+     * @param pass       A password for user
+     * @param profile    Transport tuning
+     * @throws JcifsException
+     */
+    public static JcifsAuth createShared(int smb_level, String domain, String user, String pass, JcifsPerformanceProfile profile) throws JcifsException {
+        if (smb_level==JCIFS_FILE_SMB1) return new JcifsAuth(smb_level, domain, user, pass, profile);
+        JcifsAuth auth = createShared(smb_level, domain, user, pass, profile.getProperties(smb_level));
+        auth.mProfile = profile;
+        return auth;
+    }
+
+    /**
+     * createShared with the level found by {@link JcifsUtil#detectBestSmbLevel(String, String, String, String, Properties)}
+     *
+     * @param host       Server name or address, with ":port" if not 445
+     * @param domain     A domain name
+     * @param user       A user name
+     * @param pass       A password for user
+     * @param prop       jcifs option property, null is use default
+     * @throws JcifsException No SMB level could connect to the host
+     */
+    public static JcifsAuth createForHost(String host, String domain, String user, String pass, Properties prop) throws JcifsException {
+        int smb_level = JcifsUtil.detectBestSmbLevel(host, domain, user, pass, prop);
+        if (smb_level == 0) throw (new JcifsException("No SMB level could connect to " + host + "."));
+        return createShared(smb_level, domain, user, pass, prop);
+    }
+
+    /**
+     * See {@link #createForHost(String, String, String, String, Properties)}
+     */
+    public static JcifsAuth createForHost(String host, String domain, String user, String pass) throws JcifsException {
+        return createForHost(host, domain, user, pass, null);
+    }
+
+    private static Properties getDefaultProperties(int smb_level) {
+        Properties prop = new Properties();
+        if (smb_level==JCIFS_FILE_SMB201 || smb_level==JCIFS_FILE_SMB211) {
+            prop.setProperty("jcifs.smb.client.minVersion", "SMB210");
+            prop.setProperty("jcifs.smb.client.maxVersion", "SMB210");
+        } else if (smb_level==JCIFS_FILE_SMB212) {
+            prop.setProperty("jcifs.smb.client.minVersion", "SMB202");
+            prop.setProperty("jcifs.smb.client.maxVersion", "SMB300");
+        } else if (smb_level==JCIFS_FILE_SMB214) {
+            prop.setProperty("jcifs.smb.client.minVersion", "SMB202");
+            prop.setProperty("jcifs.smb.client.maxVersion", "SMB311");
+        }
+        return prop;
+    }
+
+    /**
+     * Connect to the shares of the host in the background and keep the session alive, so the first request of the
+     * application does not pay name resolution, negotiate, session setup and tree connect. The keep-alive interval
+     * is half the soTimeout, after which jcifs closes an idle transport. Stopped by close().
+     *
+     * @param host   Server name or address, with ":port" if not 445
+     * @param shares Share names, none is negotiate and session setup only
+     * @return Completed when all shares are connected, or exceptionally with the JcifsException of the first failure
+     */
+    public CompletableFuture<Void> warmUp(String host, String... shares) {
+        return warmUp(host, getKeepAliveMillis(), shares);
+    }
+
+    /**
+     * See {@link #warmUp(String, String...)}
+     *
+     * @param host              Server name or address, with ":port" if not 445
+     * @param keep_alive_millis Interval of the keep-alive request, 0 is connect only
+     * @param shares            Share names, none is negotiate and session setup only
+     */
+    public CompletableFuture<Void> warmUp(String host, long keep_alive_millis, String... shares) {
+        JcifsWarmUp warm_up;
+        synchronized (this) {
+            if (mClosed) {
+                CompletableFuture<Void> future = new CompletableFuture<Void>();
+                future.completeExceptionally(new JcifsException("JcifsAuth is closed."));
+                return future;
+            }
+            if (mWarmUp == null) mWarmUp = new JcifsWarmUp(this);
+            warm_up = mWarmUp;
+        }
+        return warm_up.start(host, shares, keep_alive_millis);
+    }
+
+    private long getKeepAliveMillis() {
+        String so_timeout = getEffectiveProperties().getProperty(JcifsPerformanceProfile.PROP_SO_TIMEOUT);
+        long millis = DEFAULT_SO_TIMEOUT;
+        if (so_timeout != null) {
+            try {
+                millis = Long.parseLong(so_timeout.trim());
+            } catch (NumberFormatException e) {
+                millis = DEFAULT_SO_TIMEOUT;
+            }
+        }
+        return Math.max(millis / 2, MIN_KEEP_ALIVE_MILLIS);
+    }
+
+    /**
+     * Release the CIFSContext. A shared context is closed when the last JcifsAuth using it is closed,
+     * otherwise the context of this JcifsAuth is closed. JcifsFile of this JcifsAuth must not be used after close.
+     * The keep-alive of warmUp() is stopped.
+     */
+    public void close() {
+        JcifsWarmUp warm_up;
+        synchronized (this) {
+            if (mClosed) return;
+            mClosed = true;
+            warm_up = mWarmUp;
+            mWarmUp = null;
+        }
+        if (warm_up != null) warm_up.stop();
+        if (mSharedContext != null) {
+            JcifsContextRegistry.release(mSharedContext);
+        } else if (isSmb201()) {
+            JcifsContextRegistry.closeContext(mSmb201Auth);
+        } else if (isSmb211()) {
+            JcifsContextRegistry.closeContext(mSmb211Auth);
+        } else if (isSmb212()) {
+            JcifsContextRegistry.closeContext(mSmb212Auth);
+        } else if (isSmb214()) {
+            JcifsContextRegistry.closeContext(mSmb214Auth);
+        }
+    }
+
+    /**
+     * @return The performance profile given at creation, null if none
+     */
+    public JcifsPerformanceProfile getPerformanceProfile() {
+        return mProfile;
+    }
+
+    /**
+     * Transport settings in effect for this JcifsAuth, as jcifs property names. Every property of
+     * JcifsPerformanceProfile is reported, values not set by a profile or property with the library default.
+     * jcifs.smb.client.tcpNoDelay is reported as configured, neither jcifs-1.3.17 nor jcifs-ng sets the socket option from it.
+     * The negotiated read and write sizes are not included, see JcifsFile.getReadBufferSize() and getWriteBufferSize().
+     */
+    public Properties getEffectiveProperties() {
+        Properties prop = new Properties();
+        if (mProfile != null) prop.putAll(mProfile.getProperties(mSmbLevel));
+        if (isSmb1()) {
+            for (int i = 0; i < TUNING_PROPERTY_NAMES.length; i++) {
+                prop.setProperty(TUNING_PROPERTY_NAMES[i], jcifs.Config.getProperty(TUNING_PROPERTY_NAMES[i], SMB1_TUNING_DEFAULTS[i]));
+            }
+        } else if (isSmb201() && mSmb201Auth != null) {
+            jcifsng.Configuration cfg = mSmb201Auth.getConfig();
+            putConfiguration(prop, cfg.getReceiveBufferSize(), cfg.getSendBufferSize(), cfg.getMaxMpxCount(), cfg.getResponseTimeout(),
+                    cfg.getSoTimeout(), cfg.getConnTimeout(), cfg.getAttributeCacheTimeout(), cfg.getListSize(), cfg.getListCount());
+            putTcpNoDelay(prop, cfg);
+        } else if (isSmb211() && mSmb211Auth != null) {
+            jcifsng211.Configuration cfg = mSmb211Auth.getConfig();
+            putConfiguration(prop, cfg.getReceiveBufferSize(), cfg.getSendBufferSize(), cfg.getMaxMpxCount(), cfg.getResponseTimeout(),
+                    cfg.getSoTimeout(), cfg.getConnTimeout(), cfg.getAttributeCacheTimeout(), cfg.getListSize(), cfg.getListCount());
+            putTcpNoDelay(prop, cfg);
+        } else if (isSmb212() && mSmb212Auth != null) {
+            jcifsng212.Configuration cfg = mSmb212Auth.getConfig();
+            putConfiguration(prop, cfg.getReceiveBufferSize(), cfg.getSendBufferSize(), cfg.getMaxMpxCount(), cfg.getResponseTimeout(),
+                    cfg.getSoTimeout(), cfg.getConnTimeout(), cfg.getAttributeCacheTimeout(), cfg.getListSize(), cfg.getListCount());
+            putTcpNoDelay(prop, cfg);
+        } else if (isSmb214() && mSmb214Auth != null) {
+            jcifsng214.Configuration cfg = mSmb214Auth.getConfig();
+            putConfiguration(prop, cfg.getReceiveBufferSize(), cfg.getSendBufferSize(), cfg.getMaxMpxCount(), cfg.getResponseTimeout(),
+                    cfg.getSoTimeout(), cfg.getConnTimeout(), cfg.getAttributeCacheTimeout(), cfg.getListSize(), cfg.getListCount());
+            putTcpNoDelay(prop, cfg);
+        }
+        return prop;
+    }
+
+    /**
+     * jcifs-ng reads jcifs.smb.client.tcpNoDelay into a field of its BaseConfiguration that has no getter
+     */
+    private static void putTcpNoDelay(Properties prop, Object cfg) {
+        for (Class<?> c = cfg.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField("smbTcpNoDelay");
+                f.setAccessible(true);
+                prop.setProperty(JcifsPerformanceProfile.PROP_TCP_NODELAY, String.valueOf(f.getBoolean(cfg)));
+                return;
+            } catch (NoSuchFieldException e) {
+                // Declared by a super class
+            } catch (IllegalAccessException e) {
+                return;
+            }
+        }
+    }
+
+    private static void putConfiguration(Properties prop, int rcv_buf_size, int snd_buf_size, int max_mpx_count, int response_timeout,
+                                         int so_timeout, int conn_timeout, long attr_expiration, int list_size, int list_count) {
+        prop.setProperty(JcifsPerformanceProfile.PROP_RCV_BUF_SIZE, String.valueOf(rcv_buf_size));
+        prop.setProperty(JcifsPerformanceProfile.PROP_SND_BUF_SIZE, String.valueOf(snd_buf_size));
+        prop.setProperty(JcifsPerformanceProfile.PROP_MAX_MPX_COUNT, String.valueOf(max_mpx_count));
+        prop.setProperty(JcifsPerformanceProfile.PROP_RESPONSE_TIMEOUT, String.valueOf(response_timeout));
+        prop.setProperty(JcifsPerformanceProfile.PROP_SO_TIMEOUT, String.valueOf(so_timeout));
+        prop.setProperty(JcifsPerformanceProfile.PROP_CONN_TIMEOUT, String.valueOf(conn_timeout));
+        prop.setProperty(JcifsPerformanceProfile.PROP_ATTR_EXPIRATION_PERIOD, String.valueOf(attr_expiration));
+        prop.setProperty(JcifsPerformanceProfile.PROP_LIST_SIZE, String.valueOf(list_size));
+        prop.setProperty(JcifsPerformanceProfile.PROP_LIST_COUNT, String.valueOf(list_count));
+    }
+
+    /**
+     * Time in milliseconds the attributes kept in a JcifsFile by loadAttributes() are used,
+     * jcifs.smb.client.attrExpirationPeriod like the attribute cache of the SmbFile
+     */
+    long getAttributeExpirationPeriod() {
+        long period = mAttrExpirationPeriod;
+        if (period < 0) {
+            period = DEFAULT_ATTR_EXPIRATION_PERIOD;
+            String value = getEffectiveProperties().getProperty(JcifsPerformanceProfile.PROP_ATTR_EXPIRATION_PERIOD);
+            if (value != null) {
+                try {
+                    period = Long.parseLong(value.trim());
+                } catch (NumberFormatException e) {
+                    period = DEFAULT_ATTR_EXPIRATION_PERIOD;
+                }
+            }
+            mAttrExpirationPeriod = period;
+        }
+        return period;
+    }
+
+    /**
+     * Set the metadata cache used by JcifsFile of this JcifsAuth, null disables the cache.
+     * The cache is off by default.
+     */
+    public void setMetadataCache(JcifsMetadataCache cache) {
+        mMetadataCache = cache;
+    }
+
+    public JcifsMetadataCache getMetadataCache() {
+        return mMetadataCache;
+    }
+
+    /**
+     * Set the cache of missing paths used by exists() of JcifsFile of this JcifsAuth, null disables the cache.
+     * The cache is off by default.
+     */
+    public void setNegativeLookupCache(JcifsNegativeLookupCache cache) {
+        mNegativeLookupCache = cache;
+    }
+
+    public JcifsNegativeLookupCache getNegativeLookupCache() {
+        return mNegativeLookupCache;
+    }
+
+    /**
+     * @param enabled true is the first metadata call of a JcifsFile of this JcifsAuth reads all attributes with one
+     *                request and keeps them in the JcifsFile, see {@link JcifsFile#loadAttributes()}.
+     *                Later metadata calls on the same JcifsFile need no request. The default is false.
+     */
+    public void setAttributeSnapshotEnabled(boolean enabled) {
+        mAttributeSnapshotEnabled = enabled;
+    }
+
+    public boolean isAttributeSnapshotEnabled() {
+        return mAttributeSnapshotEnabled;
+    }
+
+    /**
+     * Set the metrics that JcifsFile of this JcifsAuth report their operations to, null disables the reporting.
+     * A JcifsFile binds the metrics when it is created, files created before the call are not reported.
+     * The metrics are off by default, see {@link JcifsMetricsRecorder}.
+     */
+    public void setMetrics(JcifsMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public JcifsMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public boolean isShared() {
+        return mSharedContext != null;
+    }
+
     public int getSmbLevel() {
         return mSmbLevel;
     }
@@ -0,0 +1,88 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide pool of transfer buffers. Sizes are rounded up to a power of two so buffers of
+ * similar negotiated read/write sizes are shared, and the number of idle buffers of each size is bounded.
+ * The SMB backends read and write byte arrays, so the buffers are heap arrays. FileChannel copies a
+ * heap ByteBuffer through its own cached temporary direct buffer, so no direct buffer is allocated per copy either.
+ */
+final class JcifsBufferPool {
+    final static private int MIN_BUFFER_SIZE = 4 * 1024;
+    final static private int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+    final static private int MAX_IDLE_BUFFERS_PER_SIZE = 16;
+
+    private static final ConcurrentHashMap<Integer, SizeClass> mPool = new ConcurrentHashMap<Integer, SizeClass>();
+
+    private static class SizeClass {
+        final ConcurrentLinkedQueue<byte[]> idle = new ConcurrentLinkedQueue<byte[]>();
+        final AtomicInteger idleCount = new AtomicInteger(0);
+    }
+
+    private JcifsBufferPool() {
+    }
+
+    /**
+     * @param min_size Minimum buffer size
+     * @return A buffer of min_size or more, return it by release() after use
+     */
+    static byte[] acquire(int min_size) {
+        int size = roundUp(min_size);
+        SizeClass sc = mPool.get(size);
+        if (sc != null) {
+            byte[] buf = sc.idle.poll();
+            if (buf != null) {
+                sc.idleCount.decrementAndGet();
+                return buf;
+            }
+        }
+        return new byte[size];
+    }
+
+    static void release(byte[] buf) {
+        if (buf == null || buf.length != roundUp(buf.length)) return;
+        SizeClass sc = mPool.get(buf.length);
+        if (sc == null) {
+            SizeClass new_sc = new SizeClass();
+            sc = mPool.putIfAbsent(buf.length, new_sc);
+            if (sc == null) sc = new_sc;
+        }
+        if (sc.idleCount.incrementAndGet() > MAX_IDLE_BUFFERS_PER_SIZE) {
+            sc.idleCount.decrementAndGet();
+            return;
+        }
+        sc.idle.offer(buf);
+    }
+
+    private static int roundUp(int size) {
+        if (size <= MIN_BUFFER_SIZE) return MIN_BUFFER_SIZE;
+        if (size >= MAX_BUFFER_SIZE) return MAX_BUFFER_SIZE;
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+}
@@ -0,0 +1,145 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single round trip attribute query for the jcifs-ng 2.1.2 and 2.1.4 backends.
+ * On SMB2 the package private SmbFile.queryPath() sends CREATE and CLOSE with the post-query flag as one
+ * compounded request and the CLOSE response carries attributes, times and size together. The public SmbFile methods
+ * keep only part of that response, exists() drops the size and length() drops the attributes, so a full set
+ * costs two round trips through them. queryPath() is called by reflection; if it is not accessible or the tree
+ * is SMB1, isAvailable() is false and the caller uses the public methods.
+ */
+class JcifsCompoundQuery {
+    private static final Logger log = LoggerFactory.getLogger(JcifsCompoundQuery.class);
+
+    final static private int NT_STATUS_OBJECT_NAME_INVALID = 0xC0000033;
+    final static int NT_STATUS_OBJECT_NAME_NOT_FOUND = 0xC0000034;
+    final static private int NT_STATUS_OBJECT_PATH_NOT_FOUND = 0xC000003A;
+    final static private int NT_STATUS_NO_SUCH_FILE = 0xC000000F;
+
+    private static final Method mSmb212QueryPath = findQueryPath("jcifsng212");
+    private static final Method mSmb214QueryPath = findQueryPath("jcifsng214");
+
+    private JcifsCompoundQuery() {
+    }
+
+    private static Method findQueryPath(String pkg) {
+        try {
+            Method m = Class.forName(pkg + ".smb.SmbFile").getDeclaredMethod("queryPath",
+                    Class.forName(pkg + ".smb.SmbTreeHandleImpl"), String.class, int.class);
+            m.setAccessible(true);
+            return m;
+        } catch (Exception e) {
+            log.debug("Compound attribute query is not available for " + pkg, e);
+            return null;
+        }
+    }
+
+    static boolean isAvailable(jcifsng212.smb.SmbFile file) {
+        return mSmb212QueryPath != null && file.getShare() != null;
+    }
+
+    static boolean isAvailable(jcifsng214.smb.SmbFile file) {
+        return mSmb214QueryPath != null && file.getShare() != null;
+    }
+
+    /**
+     * @return Attributes, null if the file does not exist
+     */
+    static JcifsFileAttributes query(jcifsng212.smb.SmbFile file) throws JcifsException {
+        try {
+            jcifsng212.SmbTreeHandle th = file.getTreeHandle();
+            try {
+                if (!th.isSMB2()) return queryPublic(file);
+                jcifsng212.internal.SmbBasicFileInfo info = (jcifsng212.internal.SmbBasicFileInfo)
+                        mSmb212QueryPath.invoke(file, th, file.getLocator().getUNCPath(), jcifsng212.internal.fscc.FileInformation.FILE_STANDARD_INFO);
+                return new JcifsFileAttributes(info.getAttributes(), info.getSize(), info.getLastWriteTime());
+            } finally {
+                th.close();
+            }
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof jcifsng212.CIFSException) {
+                JcifsException je = JcifsSmb212Backend.toJcifsException((jcifsng212.CIFSException) cause);
+                if (isNotFound(je.getNtStatus())) return null;
+                throw je;
+            }
+            throw (new JcifsException(cause, 0, cause.getCause()));
+        } catch (IllegalAccessException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } catch (jcifsng212.CIFSException e) {
+            throw JcifsSmb212Backend.toJcifsException(e);
+        }
+    }
+
+    /**
+     * @return Attributes, null if the file does not exist
+     */
+    static JcifsFileAttributes query(jcifsng214.smb.SmbFile file) throws JcifsException {
+        try {
+            jcifsng214.SmbTreeHandle th = file.getTreeHandle();
+            try {
+                if (!th.isSMB2()) return queryPublic(file);
+                jcifsng214.internal.SmbBasicFileInfo info = (jcifsng214.internal.SmbBasicFileInfo)
+                        mSmb214QueryPath.invoke(file, th, file.getLocator().getUNCPath(), jcifsng214.internal.fscc.FileInformation.FILE_STANDARD_INFO);
+                return new JcifsFileAttributes(info.getAttributes(), info.getSize(), info.getLastWriteTime());
+            } finally {
+                th.close();
+            }
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof jcifsng214.CIFSException) {
+                JcifsException je = JcifsSmb214Backend.toJcifsException((jcifsng214.CIFSException) cause);
+                if (isNotFound(je.getNtStatus())) return null;
+                throw je;
+            }
+            throw (new JcifsException(cause, 0, cause.getCause()));
+        } catch (IllegalAccessException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } catch (jcifsng214.CIFSException e) {
+            throw JcifsSmb214Backend.toJcifsException(e);
+        }
+    }
+
+    private static JcifsFileAttributes queryPublic(jcifsng212.smb.SmbFile file) throws jcifsng212.smb.SmbException {
+        return file.exists() ? JcifsFileAttributes.fromSmbFile(file) : null;
+    }
+
+    private static JcifsFileAttributes queryPublic(jcifsng214.smb.SmbFile file) throws jcifsng214.smb.SmbException {
+        return file.exists() ? JcifsFileAttributes.fromSmbFile(file) : null;
+    }
+
+    private static boolean isNotFound(int nt_status) {
+        // The statuses SmbFile.exists() of jcifs-ng answers with false
+        return nt_status == NT_STATUS_OBJECT_NAME_NOT_FOUND || nt_status == NT_STATUS_OBJECT_PATH_NOT_FOUND ||
+                nt_status == NT_STATUS_NO_SUCH_FILE || nt_status == NT_STATUS_OBJECT_NAME_INVALID;
+    }
+}
@@ -0,0 +1,179 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of CIFSContext shared by JcifsAuth instances created with {@link JcifsAuth#createShared}.
+ * A context is keyed by SMB level, domain, user, password and the effective properties, and is closed
+ * when the last JcifsAuth using it is closed. Sharing the context shares its transport pool, so the
+ * negotiate and session setup are done once per server.
+ */
+final class JcifsContextRegistry {
+    private static final Logger log = LoggerFactory.getLogger(JcifsContextRegistry.class);
+
+    private static final HashMap<String, SharedContext> mContextMap = new HashMap<String, SharedContext>();
+
+    static class SharedContext {
+        private final String mKey;
+        private final Object mContext;
+        private int mRefCount = 0;
+
+        private SharedContext(String key, Object context) {
+            mKey = key;
+            mContext = context;
+        }
+
+        Object getContext() {
+            return mContext;
+        }
+    }
+
+    private JcifsContextRegistry() {
+    }
+
+    static SharedContext acquire(int smb_level, String domain, String user, String pass, Properties prop) throws JcifsException {
+        String key = buildKey(smb_level, domain, user, pass, prop);
+        synchronized (mContextMap) {
+            SharedContext shared = mContextMap.get(key);
+            if (shared == null) {
+                shared = new SharedContext(key, createContext(smb_level, domain, user, pass, prop));
+                mContextMap.put(key, shared);
+            }
+            shared.mRefCount++;
+            return shared;
+        }
+    }
+
+    static void release(SharedContext shared) {
+        synchronized (mContextMap) {
+            if (shared.mRefCount == 0) return;
+            shared.mRefCount--;
+            if (shared.mRefCount > 0) return;
+            mContextMap.remove(shared.mKey);
+        }
+        closeContext(shared.mContext);
+    }
+
+    static int getSharedContextCount() {
+        synchronized (mContextMap) {
+            return mContextMap.size();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    static Object createContext(int smb_level, String domain, String user, String pass, Properties prop) throws JcifsException {
+        if (smb_level==JcifsAuth.JCIFS_FILE_SMB201) {
+            try {
+                jcifsng.context.BaseContext bc = new jcifsng.context.BaseContext(new jcifsng.config.PropertyConfiguration(prop));
+                jcifsng.smb.NtlmPasswordAuthentication creds = new jcifsng.smb.NtlmPasswordAuthentication(bc, domain, user, pass);
+                return bc.withCredentials(creds);
+            } catch (jcifsng.CIFSException e) {
+                throw (new JcifsException(e, 0, e.getCause()));
+            }
+        } else if (smb_level==JcifsAuth.JCIFS_FILE_SMB211) {
+            try {
+                jcifsng211.context.BaseContext bc = new jcifsng211.context.BaseContext(new jcifsng211.config.PropertyConfiguration(prop));
+                jcifsng211.smb.NtlmPasswordAuthentication creds = new jcifsng211.smb.NtlmPasswordAuthentication(bc, domain, user, pass);
+                return bc.withCredentials(creds);
+            } catch (jcifsng211.CIFSException e) {
+                throw (new JcifsException(e, 0, e.getCause()));
+            }
+        } else if (smb_level==JcifsAuth.JCIFS_FILE_SMB212) {
+            try {
+                jcifsng212.context.BaseContext bc = new jcifsng212.context.BaseContext(new jcifsng212.config.PropertyConfiguration(prop));
+                jcifsng212.smb.NtlmPasswordAuthentication creds = new jcifsng212.smb.NtlmPasswordAuthentication(bc, domain, user, pass);
+                return bc.withCredentials(creds);
+            } catch (jcifsng212.CIFSException e) {
+                throw (new JcifsException(e, 0, e.getCause()));
+            }
+        } else if (smb_level==JcifsAuth.JCIFS_FILE_SMB214) {
+            try {
+                jcifsng214.context.BaseContext bc = new jcifsng214.context.BaseContext(new jcifsng214.config.PropertyConfiguration(prop));
+                jcifsng214.smb.NtlmPasswordAuthentication creds = new jcifsng214.smb.NtlmPasswordAuthentication(bc, domain, user, pass);
+                return bc.withCredentials(creds);
+            } catch (jcifsng214.CIFSException e) {
+                throw (new JcifsException(e, 0, e.getCause()));
+            }
+        }
+        throw (new JcifsException("Unknown SMB Level"));
+    }
+
+    static void closeContext(Object context) {
+        try {
+            if (context instanceof jcifsng.CIFSContext) {
+                ((jcifsng.CIFSContext) context).close();
+            } else if (context instanceof jcifsng211.CIFSContext) {
+                ((jcifsng211.CIFSContext) context).close();
+            } else if (context instanceof jcifsng212.CIFSContext) {
+                ((jcifsng212.CIFSContext) context).close();
+            } else if (context instanceof jcifsng214.CIFSContext) {
+                ((jcifsng214.CIFSContext) context).close();
+            }
+        } catch (jcifsng.CIFSException e) {
+            log.error("close CIFSException", e);
+        } catch (jcifsng211.CIFSException e) {
+            log.error("close CIFSException", e);
+        } catch (jcifsng212.CIFSException e) {
+            log.error("close CIFSException", e);
+        } catch (jcifsng214.CIFSException e) {
+            log.error("close CIFSException", e);
+        }
+    }
+
+    private static String buildKey(int smb_level, String domain, String user, String pass, Properties prop) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(smb_level).append('\n');
+        sb.append(domain).append('\n');
+        sb.append(user).append('\n');
+        sb.append(digest(pass)).append('\n');
+        ArrayList<String> names = new ArrayList<String>(prop.stringPropertyNames());
+        Collections.sort(names);
+        for (String name : names) sb.append(name).append('=').append(prop.getProperty(name)).append('\n');
+        return sb.toString();
+    }
+
+    private static String digest(String pass) {
+        if (pass == null) return "";
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(pass.getBytes(Charset.forName("UTF-8")));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return pass;
+        }
+    }
+}
@@ -23,10 +23,16 @@ OTHER DEALINGS IN THE SOFTWARE.
 
 */
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 
 
 public class JcifsFile {
@@ -37,782 +43,811 @@ public class JcifsFile {
     final static public int JCIFS_FILE_SMB212 = JcifsAuth.JCIFS_FILE_SMB212;
     final static public int JCIFS_FILE_SMB214 = JcifsAuth.JCIFS_FILE_SMB214;
 
-    private int mSmbLevel = JCIFS_FILE_SMB1;
+    final static public int FILE_NOTIFY_CHANGE_FILE_NAME = 0x00000001;
+    final static public int FILE_NOTIFY_CHANGE_DIR_NAME = 0x00000002;
+    final static public int FILE_NOTIFY_CHANGE_NAME = 0x00000003;
+    final static public int FILE_NOTIFY_CHANGE_ATTRIBUTES = 0x00000004;
+    final static public int FILE_NOTIFY_CHANGE_SIZE = 0x00000008;
+    final static public int FILE_NOTIFY_CHANGE_LAST_WRITE = 0x00000010;
+    final static public int FILE_NOTIFY_CHANGE_LAST_ACCESS = 0x00000020;
+    final static public int FILE_NOTIFY_CHANGE_CREATION = 0x00000040;
+    final static public int FILE_NOTIFY_CHANGE_SECURITY = 0x00000100;
+
+    final static public int DEFAULT_STAT_PARALLELISM = 16;
+
+    final static int DEFAULT_TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    // jcifs answers a file that does not exist with ATTR_READONLY | ATTR_DIRECTORY and times of 0
+    final static private JcifsFileAttributes MISSING_ATTRIBUTES = new JcifsFileAttributes(0x11, 0L, 0L);
 
     private JcifsAuth mAuth = null;
 
-    private jcifsng.smb.SmbFile mSmb201File = null;
-    private jcifsng211.smb.SmbFile mSmb211File = null;
-    private jcifsng212.smb.SmbFile mSmb212File = null;
-    private jcifsng214.smb.SmbFile mSmb214File = null;
-    private jcifs.smb.SmbFile mSmb1File = null;
+    private final JcifsFileBackend mBackend;
+
+    private volatile AttributeSnapshot mAttributeSnapshot = null;
+
+    private static volatile JcifsTracer mTracer = null;
 
     public JcifsFile(String url, JcifsAuth auth) throws MalformedURLException, JcifsException {
         if (auth==null) {
             throw new JcifsException("JcifsAuth is null.");
         }
-        mSmbLevel = auth.getSmbLevel();
         mAuth = auth;
-
-        if (mSmbLevel==JCIFS_FILE_SMB1) {
-            mSmb1File = new jcifs.smb.SmbFile(url, auth.getSmb1Auth());
-        } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            mSmb201File = new jcifsng.smb.SmbFile(url, auth.getSmb201Auth());
-        } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            mSmb211File = new jcifsng211.smb.SmbFile(url, auth.getSmb211Auth());
-        } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            mSmb212File = new jcifsng212.smb.SmbFile(url, auth.getSmb212Auth());
-        } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            mSmb214File = new jcifsng214.smb.SmbFile(url, auth.getSmb214Auth());
-        }
+        mBackend = bindMetrics(newBackend(url, auth), auth);
     }
 
-    private JcifsFile(jcifs.smb.SmbFile smb1File, JcifsAuth auth) throws JcifsException {
-        mSmbLevel = JCIFS_FILE_SMB1;
+    JcifsFile(jcifs.smb.SmbFile smb1File, JcifsAuth auth) throws JcifsException {
         if (auth==null || !auth.isSmb1()) {
             throw new JcifsException("JcifsAuth is null or SMB2.");
         }
         mAuth = auth;
-        mSmb1File = smb1File;
+        mBackend = bindMetrics(new JcifsSmb1Backend(smb1File), auth);
     }
 
-    private JcifsFile(jcifsng.smb.SmbFile smb2File, JcifsAuth auth) throws JcifsException {
-        mSmbLevel = JCIFS_FILE_SMB201;
+    JcifsFile(jcifsng.smb.SmbFile smb2File, JcifsAuth auth) throws JcifsException {
         if (auth==null || auth.isSmb1()) {
             throw new JcifsException("JcifsAuth is null or SMB1.");
         }
         mAuth = auth;
-        mSmb201File = smb2File;
+        mBackend = bindMetrics(new JcifsSmb201Backend(smb2File), auth);
     }
 
-    private JcifsFile(jcifsng211.smb.SmbFile smb211File, JcifsAuth auth) throws JcifsException {
-        mSmbLevel = JCIFS_FILE_SMB211;
+    JcifsFile(jcifsng211.smb.SmbFile smb211File, JcifsAuth auth) throws JcifsException {
         if (auth==null || auth.isSmb1()) {
             throw new JcifsException("JcifsAuth is null or SMB1.");
         }
         mAuth = auth;
-        mSmb211File = smb211File;
+        mBackend = bindMetrics(new JcifsSmb211Backend(smb211File), auth);
     }
 
-    private JcifsFile(jcifsng212.smb.SmbFile smb212File, JcifsAuth auth) throws JcifsException {
-        mSmbLevel = JCIFS_FILE_SMB212;
+    JcifsFile(jcifsng212.smb.SmbFile smb212File, JcifsAuth auth) throws JcifsException {
         if (auth==null || auth.isSmb1()) {
             throw new JcifsException("JcifsAuth is null or SMB1.");
         }
         mAuth = auth;
-        mSmb212File = smb212File;
+        mBackend = bindMetrics(new JcifsSmb212Backend(smb212File), auth);
     }
 
-    private JcifsFile(jcifsng214.smb.SmbFile smb214File, JcifsAuth auth) throws JcifsException {
-        mSmbLevel = JCIFS_FILE_SMB214;
+    JcifsFile(jcifsng214.smb.SmbFile smb214File, JcifsAuth auth) throws JcifsException {
         if (auth==null || auth.isSmb1()) {
             throw new JcifsException("JcifsAuth is null or SMB1.");
         }
         mAuth = auth;
-        mSmb214File = smb214File;
+        mBackend = bindMetrics(new JcifsSmb214Backend(smb214File), auth);
+    }
+
+    /**
+     * Bind the backend of the SMB level, the file operations of this class call it without looking at the level.
+     * JcifsRandomAccessFile, JcifsFileIterator and JcifsWatchHandle open their handles through the backend too.
+     */
+    private static JcifsFileBackend newBackend(String url, JcifsAuth auth) throws MalformedURLException, JcifsException {
+        int smb_level = auth.getSmbLevel();
+        if (smb_level==JCIFS_FILE_SMB1) {
+            return new JcifsSmb1Backend(new jcifs.smb.SmbFile(url, auth.getSmb1Auth()));
+        } else if (smb_level==JCIFS_FILE_SMB201) {
+            return new JcifsSmb201Backend(new jcifsng.smb.SmbFile(url, auth.getSmb201Auth()));
+        } else if (smb_level==JCIFS_FILE_SMB211) {
+            return new JcifsSmb211Backend(new jcifsng211.smb.SmbFile(url, auth.getSmb211Auth()));
+        } else if (smb_level==JCIFS_FILE_SMB212) {
+            return new JcifsSmb212Backend(new jcifsng212.smb.SmbFile(url, auth.getSmb212Auth()));
+        } else if (smb_level==JCIFS_FILE_SMB214) {
+            return new JcifsSmb214Backend(new jcifsng214.smb.SmbFile(url, auth.getSmb214Auth()));
+        } else
+            throw (new JcifsException("Unknown SMB Level"));
+    }
+
+    /**
+     * Put the metering backend in front of the level backend if the JcifsAuth has metrics or a tracer is set
+     */
+    private static JcifsFileBackend bindMetrics(JcifsFileBackend backend, JcifsAuth auth) {
+        JcifsMetrics metrics = auth.getMetrics();
+        JcifsTracer tracer = mTracer;
+        if (metrics == null && tracer == null) return backend;
+        return new JcifsMeteredBackend(backend, metrics, tracer);
+    }
+
+    /**
+     * Set the tracer of the process, null removes it. JcifsFile created after the call report their operations
+     * to the tracer, as do the lookups of JcifsUtil. No tracer is set by default.
+     */
+    public static void setTracer(JcifsTracer tracer) {
+        mTracer = tracer;
+    }
+
+    public static JcifsTracer getTracer() {
+        return mTracer;
+    }
+
+    /**
+     * The backend of this file, with the metering backend if one is bound
+     */
+    JcifsFileBackend getBackend() {
+        return mBackend;
+    }
+
+    /**
+     * The backend of the level, without the metering backend
+     */
+    private JcifsFileBackend getLevelBackend() {
+        return mBackend instanceof JcifsMeteredBackend ? ((JcifsMeteredBackend) mBackend).getDelegate() : mBackend;
     }
 
     public boolean isSmb1File() {
-        return mSmbLevel==JCIFS_FILE_SMB1;
+        return mBackend.getSmbLevel()==JCIFS_FILE_SMB1;
     }
 
     public boolean isSmb201File() {
-        return mSmbLevel==JCIFS_FILE_SMB201;
+        return mBackend.getSmbLevel()==JCIFS_FILE_SMB201;
     }
 
     public boolean isSmb211File() {
-        return mSmbLevel==JCIFS_FILE_SMB211;
+        return mBackend.getSmbLevel()==JCIFS_FILE_SMB211;
     }
 
     public boolean isSmb212File() {
-        return mSmbLevel==JCIFS_FILE_SMB212;
+        return mBackend.getSmbLevel()==JCIFS_FILE_SMB212;
     }
 
     public boolean isSmb214File() {
-        return mSmbLevel==JCIFS_FILE_SMB214;
+        return mBackend.getSmbLevel()==JCIFS_FILE_SMB214;
     }
 
     public jcifs.smb.SmbFile getSmb1File() {
-        return mSmb1File;
+        JcifsFileBackend backend = getLevelBackend();
+        return backend instanceof JcifsSmb1Backend ? ((JcifsSmb1Backend) backend).getSmbFile() : null;
     }
 
     public jcifsng.smb.SmbFile getSmb201File() {
-        return mSmb201File;
+        JcifsFileBackend backend = getLevelBackend();
+        return backend instanceof JcifsSmb201Backend ? ((JcifsSmb201Backend) backend).getSmbFile() : null;
     }
 
     public jcifsng211.smb.SmbFile getSmb211File() {
-        return mSmb211File;
+        JcifsFileBackend backend = getLevelBackend();
+        return backend instanceof JcifsSmb211Backend ? ((JcifsSmb211Backend) backend).getSmbFile() : null;
     }
 
     public jcifsng212.smb.SmbFile getSmb212File() {
-        return mSmb212File;
+        JcifsFileBackend backend = getLevelBackend();
+        return backend instanceof JcifsSmb212Backend ? ((JcifsSmb212Backend) backend).getSmbFile() : null;
     }
 
     public jcifsng214.smb.SmbFile getSmb214File() {
-        return mSmb214File;
+        JcifsFileBackend backend = getLevelBackend();
+        return backend instanceof JcifsSmb214Backend ? ((JcifsSmb214Backend) backend).getSmbFile() : null;
     }
 
     public boolean exists() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-                return mSmb1File.exists();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-                return mSmb201File.exists();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-                return mSmb211File.exists();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-                return mSmb212File.exists();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-                return mSmb214File.exists();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        AttributeSnapshot snapshot = getAttributeSnapshot();
+        if (snapshot != null) return snapshot.mAttributes != null;
+        JcifsNegativeLookupCache negative_cache = mAuth.getNegativeLookupCache();
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        if (cache == null && negative_cache == null) return queryExists();
+        String key = getCacheKey();
+        if (negative_cache != null && negative_cache.isMissing(key)) return false;
+        Boolean cached = cache == null ? null : cache.getExists(key);
+        if (cached != null) return cached;
+        boolean result = queryExists();
+        if (cache != null) cache.putExists(key, result);
+        if (negative_cache != null && !result) negative_cache.putMissing(key);
+        return result;
+    }
 
+    private boolean queryExists() throws JcifsException {
+        if (mAuth.isAttributeSnapshotEnabled()) return loadAttributes() != null;
+        return existsFromServer();
     }
 
-    public void delete() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	mSmb1File.delete();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	mSmb201File.delete();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	mSmb211File.delete();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	mSmb212File.delete();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	mSmb214File.delete();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+    private boolean existsFromServer() throws JcifsException {
+        return mBackend.exists();
+    }
 
+    public void delete() throws JcifsException {
+        invalidateAttributes();
+        mBackend.delete();
     }
 
     public void mkdir() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	mSmb1File.mkdir();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	mSmb201File.mkdir();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	mSmb211File.mkdir();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	mSmb212File.mkdir();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	mSmb214File.mkdir();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        invalidateAttributes();
+        mBackend.mkdir();
     }
 
     public void mkdirs() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	mSmb1File.mkdirs();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	mSmb201File.mkdirs();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	mSmb211File.mkdirs();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	mSmb212File.mkdirs();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	mSmb214File.mkdirs();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        invalidateAttributes();
+        invalidateParentAttributes();
+        mBackend.mkdirs();
     }
 
     public int getAttributes() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.getAttributes();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.getAttributes();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.getAttributes();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.getAttributes();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.getAttributes();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        JcifsFileAttributes cached_attr = getCachedAttributes();
+        if (cached_attr != null) return cached_attr.getAttributes();
+        return mBackend.getAttributes();
     }
 
     public InputStream getInputStream() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.getInputStream();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.getInputStream();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.getInputStream();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.getInputStream();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.getInputStream();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (IOException e) {
-            throw (new JcifsException(e, 0, e.getCause()));
-        }
+        return mBackend.getInputStream();
     }
 
 
     public OutputStream getOutputStream() throws JcifsException {
+        invalidateAttributes();
+        return mBackend.getOutputStream();
+    }
+
+    /**
+     * Open a SeekableByteChannel for positional read and write over the SmbRandomAccessFile of the SMB level.
+     *
+     * @param mode "r" for read only, "rw" for read and write. "rw" creates the file if it does not exist.
+     * @return The channel, close it after use
+     * @throws JcifsException
+     */
+    public JcifsFileChannel openChannel(String mode) throws JcifsException {
+        if ("rw".equals(mode)) invalidateAttributes();
+        return new JcifsFileChannel(this, mode);
+    }
+
+    /**
+     * Negotiated maximum size of a read request
+     */
+    int getReadBufferSize() throws JcifsException {
+        return mBackend.getReadBufferSize();
+    }
+
+    /**
+     * Negotiated maximum size of a write request
+     */
+    int getWriteBufferSize() throws JcifsException {
+        return mBackend.getWriteBufferSize();
+    }
+
+    /**
+     * Copy this file to a local file. The copy loop uses a pooled buffer sized to the negotiated
+     * maximum read size, so no buffer is allocated per copy.
+     *
+     * @param local Local file, created or truncated
+     * @return Number of bytes copied
+     * @throws JcifsException
+     */
+    public long transferTo(Path local) throws JcifsException {
+        byte[] buf = JcifsBufferPool.acquire(getReadBufferSize());
+        InputStream is = null;
+        FileChannel fc = null;
         try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.getOutputStream();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.getOutputStream();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.getOutputStream();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.getOutputStream();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.getOutputStream();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            is = getInputStream();
+            fc = FileChannel.open(local, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            long total = 0;
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                bb.clear().limit(n);
+                while (bb.hasRemaining()) fc.write(bb);
+                total += n;
+            }
+            return total;
         } catch (IOException e) {
             throw (new JcifsException(e, 0, e.getCause()));
+        } finally {
+            closeQuietly(is);
+            closeQuietly(fc);
+            JcifsBufferPool.release(buf);
+        }
+    }
+
+    /**
+     * Copy a local file to this file. The copy loop uses a pooled buffer sized to the negotiated
+     * maximum write size, so no buffer is allocated per copy.
+     *
+     * @param local Local file
+     * @return Number of bytes copied
+     * @throws JcifsException
+     */
+    public long transferFrom(Path local) throws JcifsException {
+        byte[] buf = JcifsBufferPool.acquire(getWriteBufferSize());
+        FileChannel fc = null;
+        OutputStream os = null;
+        try {
+            fc = FileChannel.open(local, StandardOpenOption.READ);
+            os = getOutputStream();
+            long total = 0;
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            int n;
+            while ((n = fc.read(bb)) >= 0) {
+                if (n == 0 && bb.hasRemaining()) continue;
+                if (bb.position() > 0) os.write(buf, 0, bb.position());
+                total += bb.position();
+                bb.clear();
+            }
+            if (bb.position() > 0) {
+                os.write(buf, 0, bb.position());
+                total += bb.position();
+            }
+            os.close();
+            os = null;
+            return total;
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } finally {
+            closeQuietly(os);
+            closeQuietly(fc);
+            JcifsBufferPool.release(buf);
         }
     }
 
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException e) {
+            // The copy result is already decided
+        }
+    }
+
+    /**
+     * Download this file to a local file with several SMB read streams in parallel
+     *
+     * @param local       Local file, created or truncated
+     * @param parallelism Number of ranges read at the same time
+     * @throws JcifsException
+     */
+    public void downloadTo(Path local, int parallelism) throws JcifsException {
+        downloadTo(local, new JcifsTransferOptions(parallelism));
+    }
+
+    /**
+     * Download this file to a local file. The file is split into ranges of the chunk size, the ranges are read
+     * concurrently, each over its own file handle, and written to the local FileChannel at their offset.
+     * A failed range is retried from its start after the handle is reopened.
+     *
+     * @param local   Local file, created or truncated
+     * @param options Parallelism, chunk size, retry count and progress listener
+     * @throws JcifsException The error of the range that failed after all retries
+     */
+    public void downloadTo(Path local, JcifsTransferOptions options) throws JcifsException {
+        if (options == null) options = new JcifsTransferOptions();
+        new JcifsParallelTransfer(this, options).download(local);
+    }
+
+    /**
+     * Upload a local file to this file with several SMB write streams in parallel
+     *
+     * @param local       Local file
+     * @param parallelism Number of ranges written at the same time
+     * @throws JcifsException
+     */
+    public void uploadFrom(Path local, int parallelism) throws JcifsException {
+        uploadFrom(local, new JcifsTransferOptions(parallelism));
+    }
+
+    /**
+     * Upload a local file to this file. The remote file is created or resized to the local size first,
+     * then chunks are written concurrently at their offsets, each thread over its own file handle.
+     * The last modified time of the local file is set by setLastModified() only after every chunk succeeded.
+     *
+     * @param local   Local file
+     * @param options Parallelism, chunk size, retry count and progress listener
+     * @throws JcifsException The error of the chunk that failed after all retries
+     */
+    public void uploadFrom(Path local, JcifsTransferOptions options) throws JcifsException {
+        invalidateAttributes();
+        if (options == null) options = new JcifsTransferOptions();
+        new JcifsParallelTransfer(this, options).upload(local);
+    }
+
     public void close() throws JcifsException {
-        if (mSmbLevel==JCIFS_FILE_SMB1) {
-        	//Nop for JCIFS(SMB1)
-//        	mSmb1File.close();
-        } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-        	mSmb201File.close();
-        } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-        	mSmb211File.close();
-        } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-        	mSmb212File.close();
-        } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-        	mSmb214File.close();
-        } else 
-        	throw (new JcifsException("Unknown SMB Level"));
+        mBackend.close();
     }
 
     public void connect() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	mSmb1File.connect();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	mSmb201File.connect();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	mSmb211File.connect();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	mSmb212File.connect();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	mSmb214File.connect();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (IOException e) {
-            throw (new JcifsException(e, 0, e.getCause()));
-        }
+        mBackend.connect();
     }
 
     public void createNew() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	mSmb1File.createNewFile();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	mSmb201File.createNewFile();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	mSmb211File.createNewFile();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	mSmb212File.createNewFile();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	mSmb214File.createNewFile();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        invalidateAttributes();
+        mBackend.createNewFile();
     }
 
     public String getName() {
-        if (mSmbLevel==JCIFS_FILE_SMB1) {
-        	return mSmb1File.getName();
-        } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-        	return mSmb201File.getName();
-        } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-        	return mSmb211File.getName();
-        } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-        	return mSmb212File.getName();
-        } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-        	return mSmb214File.getName();
-        }
-        return null;
+        return mBackend.getName();
     }
 
     public String getPath() {
-        if (mSmbLevel==JCIFS_FILE_SMB1) {
-        	return mSmb1File.getPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-        	return mSmb201File.getPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-        	return mSmb211File.getPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-        	return mSmb212File.getPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-        	return mSmb214File.getPath();
-        }
-        return null;
+        return mBackend.getPath();
     }
 
     public String getCanonicalPath() {
-        if (mSmbLevel==JCIFS_FILE_SMB1) {
-        	return mSmb1File.getCanonicalPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-        	return mSmb201File.getCanonicalPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-        	return mSmb211File.getCanonicalPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-        	return mSmb212File.getCanonicalPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-        	return mSmb214File.getCanonicalPath();
-        }
-        return null;
+        return mBackend.getCanonicalPath();
+    }
+
+    public String getServer() {
+        return mBackend.getServer();
     }
 
     public String getShare() {
-        if (mSmbLevel==JCIFS_FILE_SMB1) {
-        	return mSmb1File.getShare();
-        } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-        	return mSmb201File.getShare();
-        } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-        	return mSmb211File.getShare();
-        } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-        	return mSmb212File.getShare();
-        } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-        	return mSmb214File.getShare();
-        }
-        return null;
+        return mBackend.getShare();
     }
 
     public int getType() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.getType();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.getType();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.getType();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.getType();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.getType();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        return mBackend.getType();
     }
 
     public String getUncPath() {
-        if (mSmbLevel==JCIFS_FILE_SMB1) {
-        	return mSmb1File.getUncPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-        	return mSmb201File.getUncPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-        	return mSmb211File.getUncPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-        	return mSmb212File.getUncPath();
-        } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-        	return mSmb214File.getUncPath();
-        }
-        return null;
+        return mBackend.getUncPath();
     }
 
     public String getParent() {
-        if (mSmbLevel==JCIFS_FILE_SMB1) {
-        	return mSmb1File.getParent();
-        } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-        	return mSmb201File.getParent();
-        } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-        	return mSmb211File.getParent();
-        } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-        	return mSmb212File.getParent();
-        } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-        	return mSmb214File.getParent();
-        }
-        return null;
+        return mBackend.getParent();
     }
 
     public boolean canRead() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.canRead();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.canRead();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.canRead();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.canRead();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.canRead();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        if (cache == null) return canReadFromServer();
+        String key = getCacheKey();
+        Boolean cached = cache.getCanRead(key);
+        if (cached != null) return cached;
+        boolean result = canReadFromServer();
+        cache.putCanRead(key, result);
+        return result;
+    }
+
+    private boolean canReadFromServer() throws JcifsException {
+        return mBackend.canRead();
     }
 
     public boolean canWrite() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.canWrite();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.canWrite();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.canWrite();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.canWrite();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.canWrite();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        if (cache == null) return canWriteFromServer();
+        String key = getCacheKey();
+        Boolean cached = cache.getCanWrite(key);
+        if (cached != null) return cached;
+        boolean result = canWriteFromServer();
+        cache.putCanWrite(key, result);
+        return result;
+    }
+
+    private boolean canWriteFromServer() throws JcifsException {
+        return mBackend.canWrite();
     }
 
     public boolean isDirectory() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.isDirectory();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.isDirectory();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.isDirectory();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.isDirectory();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.isDirectory();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        JcifsFileAttributes cached_attr = getCachedAttributes();
+        if (cached_attr == MISSING_ATTRIBUTES) return false;
+        if (cached_attr != null) return cached_attr.isDirectory();
+        return mBackend.isDirectory();
     }
 
     public boolean isFile() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.isFile();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.isFile();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.isFile();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.isFile();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.isFile();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        JcifsFileAttributes cached_attr = getCachedAttributes();
+        if (cached_attr == MISSING_ATTRIBUTES) return false;
+        if (cached_attr != null) return cached_attr.isFile();
+        return mBackend.isFile();
     }
 
     public boolean isHidden() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.isHidden();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.isHidden();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.isHidden();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.isHidden();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.isHidden();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        return mBackend.isHidden();
     }
 
     public long length() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.length();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.length();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.length();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.length();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.length();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        JcifsFileAttributes cached_attr = getCachedAttributes();
+        if (cached_attr == MISSING_ATTRIBUTES) {
+            // jcifs fails the size query of a file that does not exist
+            throw (new JcifsException(new Exception("The system cannot find the file specified."),
+                    JcifsCompoundQuery.NT_STATUS_OBJECT_NAME_NOT_FOUND, null));
         }
+        if (cached_attr != null) return cached_attr.length();
+        return mBackend.length();
     }
 
-    public String[] list() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.list();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.list();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.list();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.list();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.list();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+    /**
+     * Ask the server for the size, bypassing the attribute caches. On a share root this is a file system size
+     * request that keeps the session and tree connect in use, see {@link JcifsWarmUp}.
+     */
+    void keepAlive() throws JcifsException {
+        mBackend.length();
     }
 
+    public String[] list() throws JcifsException {
+        return mBackend.list();
+    }
+
+    /**
+     * List the entries of this directory.
+     * jcifs keeps the size, timestamp and attribute bits of the directory enumeration response in the SmbFile
+     * of each entry, so exists(), isDirectory(), isFile(), length(), getLastModified() and getAttributes() of the
+     * entry answer without asking the server until the attribute expiration period of the JcifsAuth has passed.
+     * With the metadata cache of the JcifsAuth the attributes are also cached for other JcifsFile of the same path.
+     *
+     * @return Entries of this directory
+     * @throws JcifsException
+     */
     public JcifsFile[] listFiles() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-                jcifs.smb.SmbFile[] smb1Files = mSmb1File.listFiles();
-                if (smb1Files == null) return null;
-                JcifsFile[] result = new JcifsFile[smb1Files.length];
-                for (int i = 0; i < smb1Files.length; i++)
-                    result[i] = new JcifsFile(smb1Files[i], mAuth);
-                return result;
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-                jcifsng.smb.SmbFile[] smb201Files = mSmb201File.listFiles();
-                if (smb201Files == null) return null;
-                JcifsFile[] result = new JcifsFile[smb201Files.length];
-                for (int i = 0; i < smb201Files.length; i++)
-                    result[i] = new JcifsFile(smb201Files[i], mAuth);
-                return result;
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-                jcifsng211.smb.SmbFile[] smb211Files = mSmb211File.listFiles();
-                if (smb211Files == null) return null;
-                JcifsFile[] result = new JcifsFile[smb211Files.length];
-                for (int i = 0; i < smb211Files.length; i++)
-                    result[i] = new JcifsFile(smb211Files[i], mAuth);
-                return result;
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-                jcifsng212.smb.SmbFile[] smb212Files = mSmb212File.listFiles();
-                if (smb212Files == null) return null;
-                JcifsFile[] result = new JcifsFile[smb212Files.length];
-                for (int i = 0; i < smb212Files.length; i++)
-                    result[i] = new JcifsFile(smb212Files[i], mAuth);
-                return result;
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-                jcifsng214.smb.SmbFile[] smb214Files = mSmb214File.listFiles();
-                if (smb214Files == null) return null;
-                JcifsFile[] result = new JcifsFile[smb214Files.length];
-                for (int i = 0; i < smb214Files.length; i++)
-                    result[i] = new JcifsFile(smb214Files[i], mAuth);
-                return result;
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        JcifsFile[] result = mBackend.listFiles(mAuth);
+        if (result != null && mAuth.getMetadataCache() != null) {
+            for (JcifsFile child : result) child.cacheListAttributes();
+        }
+        return result;
+    }
+
+    /**
+     * Open an iterator over the entries of this directory. Unlike list() and listFiles() the entries are
+     * returned as each enumeration batch arrives. The iterator must be closed, try-with-resources is recommended.
+     * The SmbFile of each entry keeps the attributes of the enumeration response like listFiles().
+     *
+     * @return Iterator of the entries
+     * @throws JcifsException
+     */
+    public JcifsFileIterator children() throws JcifsException {
+        return new JcifsFileIterator(this);
+    }
+
+    /**
+     * Watch this directory for changes with SMB2 CHANGE_NOTIFY. Events are delivered to the listener on
+     * a separate thread, one notify response at a time. SMB1 is not supported.
+     *
+     * @param filter    FILE_NOTIFY_CHANGE_xxx combined by OR
+     * @param recursive true is also watch the subdirectories
+     * @param listener  Receives the events
+     * @return Handle of the watch, close it to stop the watch
+     * @throws JcifsException
+     */
+    public JcifsWatchHandle watch(int filter, boolean recursive, JcifsWatchListener listener) throws JcifsException {
+        if (listener == null) throw new JcifsException("JcifsWatchListener is null.");
+        return new JcifsWatchHandle(this, filter, recursive, listener);
+    }
+
+    /**
+     * Walk the directory tree from this file with default options
+     *
+     * @param visitor Callback for each entry
+     * @throws JcifsException
+     */
+    public void walk(JcifsFileVisitor visitor) throws JcifsException {
+        walk(visitor, new JcifsWalkOptions());
+    }
+
+    /**
+     * Walk the directory tree from this file. Directories are listed in parallel by a fork-join pool.
+     *
+     * @param visitor Callback for each entry, called from several threads
+     * @param options Parallelism, maximum listings in flight per server and maximum depth
+     * @throws JcifsException The first error thrown by the visitor
+     */
+    public void walk(JcifsFileVisitor visitor, JcifsWalkOptions options) throws JcifsException {
+        if (visitor == null) throw new JcifsException("JcifsFileVisitor is null.");
+        if (options == null) options = new JcifsWalkOptions();
+        new JcifsFileWalker(visitor, options).walk(this);
     }
 
     public void renameTo(JcifsFile d) throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-                if (d.getSmb1File() == null)
-                    throw new JcifsException("Null SMB1 file specified.");
-                else mSmb1File.renameTo(d.getSmb1File());
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-                if (d.getSmb201File() == null)
-                    throw new JcifsException("Null SMB201 file specified.");
-                else mSmb201File.renameTo(d.getSmb201File());
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-                if (d.getSmb211File() == null)
-                    throw new JcifsException("Null SMB211 file specified.");
-                else mSmb211File.renameTo(d.getSmb211File());
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-                if (d.getSmb212File() == null)
-                    throw new JcifsException("Null SMB212 file specified.");
-                else mSmb212File.renameTo(d.getSmb212File());
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-                if (d.getSmb214File() == null)
-                    throw new JcifsException("Null SMB214 file specified.");
-                else mSmb214File.renameTo(d.getSmb214File());
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        invalidateAttributes();
+        d.invalidateAttributes();
+        mBackend.renameTo(d);
+    }
+
+    /**
+     * Copy this file or directory to d. With SMB212/SMB214 and both files on the same server and share
+     * the copy is done by the server (SMB2 copychunk), so the data does not pass through this client.
+     * Otherwise the data is streamed through this client.
+     *
+     * @param d Destination, directories are copied recursively
+     * @throws JcifsException
+     */
+    public void copyTo(JcifsFile d) throws JcifsException {
+        if (d == null) throw new JcifsException("Null destination file specified.");
+        d.invalidateAttributes();
+        if (isServerSideCopyAvailable(d)) {
+            mBackend.copyTo(d);
+        } else {
+            streamCopyTo(d);
+        }
+    }
+
+    private boolean isServerSideCopyAvailable(JcifsFile d) {
+        if (mBackend.getSmbLevel() != d.mBackend.getSmbLevel()) return false;
+        if (!mBackend.isServerSideCopySupported()) return false;
+        String share = getShare();
+        return getServer() != null && getServer().equalsIgnoreCase(d.getServer()) &&
+                share != null && share.equalsIgnoreCase(d.getShare());
+    }
+
+    private void streamCopyTo(JcifsFile d) throws JcifsException {
+        if (isDirectory()) {
+            if (!d.exists()) d.mkdirs();
+            JcifsFile[] children = listFiles();
+            if (children == null) return;
+            String d_path = d.getPath().endsWith("/") ? d.getPath() : d.getPath() + "/";
+            for (JcifsFile child : children) {
+                try {
+                    child.streamCopyTo(new JcifsFile(d_path + child.getName(), d.getAuth()));
+                } catch (MalformedURLException e) {
+                    throw (new JcifsException(e, 0, e.getCause()));
+                }
+            }
+        } else {
+            long last_modified = getLastModified();
+            byte[] buf = JcifsBufferPool.acquire(Math.min(getReadBufferSize(), d.getWriteBufferSize()));
+            InputStream is = null;
+            OutputStream os = null;
+            try {
+                is = getInputStream();
+                os = d.getOutputStream();
+                int n;
+                while ((n = is.read(buf)) > 0) os.write(buf, 0, n);
+                os.close();
+                os = null;
+            } catch (IOException e) {
+                throw (new JcifsException(e, 0, e.getCause()));
+            } finally {
+                closeQuietly(is);
+                closeQuietly(os);
+                JcifsBufferPool.release(buf);
+            }
+            d.setLastModified(last_modified);
+        }
+    }
+
+    /**
+     * Read size, last modified time and attributes of many files at once. The requests are issued from
+     * several threads, so they are multiplexed on the connection of each server instead of waiting for each other.
+     * A parallelism above the maxMpxCount of the JcifsAuth only queues in the client.
+     *
+     * @param files Files to be queried
+     * @return Attributes in the order of files, null for a file that does not exist
+     * @throws JcifsException The first error other than not found, the remaining files are not queried
+     */
+    public static JcifsFileAttributes[] statAll(Collection<JcifsFile> files) throws JcifsException {
+        return statAll(files, DEFAULT_STAT_PARALLELISM);
+    }
+
+    /**
+     * @param files       Files to be queried
+     * @param parallelism Number of requests in flight
+     * @return Attributes in the order of files, null for a file that does not exist
+     * @throws JcifsException The first error other than not found, the remaining files are not queried
+     */
+    public static JcifsFileAttributes[] statAll(Collection<JcifsFile> files, int parallelism) throws JcifsException {
+        if (files == null) throw new JcifsException("files is null.");
+        if (parallelism < 1) throw new JcifsException("parallelism must be 1 or more.");
+        return new JcifsStatBatch(files, parallelism).run();
+    }
+
+    /**
+     * Attributes for statAll(), from loadAttributes() or the caches if available, otherwise by loadAttributes().
+     *
+     * @return Attributes, null if the file does not exist
+     */
+    JcifsFileAttributes stat() throws JcifsException {
+        AttributeSnapshot snapshot = getAttributeSnapshot();
+        if (snapshot != null) return snapshot.mAttributes;
+        JcifsNegativeLookupCache negative_cache = mAuth.getNegativeLookupCache();
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        String key = (cache != null || negative_cache != null) ? getCacheKey() : null;
+        if (negative_cache != null && negative_cache.isMissing(key)) return null;
+        if (cache != null) {
+            JcifsFileAttributes cached_attr = cache.getAttributes(key);
+            if (cached_attr != null) return cached_attr;
+            if (Boolean.FALSE.equals(cache.getExists(key))) return null;
+        }
+        JcifsFileAttributes attr = loadAttributes();
+        if (attr == null) {
+            if (cache != null) cache.putExists(key, false);
+            if (negative_cache != null) negative_cache.putMissing(key);
+        }
+        return attr;
+    }
+
+    /**
+     * Put the attributes of the enumeration response, still held by the SmbFile of a listed entry,
+     * into the metadata cache of the JcifsAuth
+     */
+    void cacheListAttributes() throws JcifsException {
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        if (cache != null) cache.putAttributes(getCacheKey(), getLevelBackend().readAttributes());
+    }
+
+    /**
+     * Query size, last modified time and attributes with one request and keep them in this JcifsFile, later
+     * exists(), isDirectory(), isFile(), length(), getLastModified() and getAttributes() are answered without a request
+     * until the file is changed through this JcifsFile, clearAttributeCache() is called or the attribute expiration
+     * period of the JcifsAuth has passed. A file that does not exist is remembered the same way.
+     * With SMB212 and SMB214 on an SMB2 connection the query is one compounded CREATE/CLOSE with post-query attributes,
+     * other levels need a second request for the size.
+     *
+     * @return The attributes, null if the file does not exist
+     * @throws JcifsException
+     */
+    public JcifsFileAttributes loadAttributes() throws JcifsException {
+        JcifsFileAttributes attr = mBackend.loadAttributes();
+        mAttributeSnapshot = new AttributeSnapshot(attr);
+        if (attr == null) return null;
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        if (cache != null) cache.putAttributes(getCacheKey(), attr);
+        return attr;
+    }
+
+    /**
+     * Attributes kept by loadAttributes() or the metadata cache of the JcifsAuth, null if neither is available.
+     * MISSING_ATTRIBUTES if the file is known not to exist, the getters answer it as jcifs does without a request.
+     * With the metadata cache a miss reads all attributes at once and caches them, a missing file is cached as not
+     * existing and answered as MISSING_ATTRIBUTES until the entry expires.
+     */
+    private JcifsFileAttributes getCachedAttributes() throws JcifsException {
+        AttributeSnapshot snapshot = getAttributeSnapshot();
+        if (snapshot != null) return snapshot.mAttributes == null ? MISSING_ATTRIBUTES : snapshot.mAttributes;
+        if (mAuth.isAttributeSnapshotEnabled()) {
+            JcifsFileAttributes attr = loadAttributes();
+            return attr == null ? MISSING_ATTRIBUTES : attr;
+        }
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        if (cache == null) return null;
+        String key = getCacheKey();
+        JcifsFileAttributes attr = cache.getAttributes(key);
+        if (attr != null) return attr;
+        if (Boolean.FALSE.equals(cache.getExists(key))) return MISSING_ATTRIBUTES;
+        attr = mBackend.loadAttributes();
+        if (attr == null) {
+            cache.putExists(key, false);
+            JcifsNegativeLookupCache negative_cache = mAuth.getNegativeLookupCache();
+            if (negative_cache != null) negative_cache.putMissing(key);
+            return MISSING_ATTRIBUTES;
+        }
+        cache.putAttributes(key, attr);
+        return attr;
+    }
+
+    private String getCacheKey() {
+        return JcifsMetadataCache.toKey(getCanonicalPath());
+    }
+
+    /**
+     * Attributes of loadAttributes(), with the time they were read
+     */
+    private static final class AttributeSnapshot {
+        // null if the file did not exist
+        private final JcifsFileAttributes mAttributes;
+        private final long mTime = System.currentTimeMillis();
+
+        AttributeSnapshot(JcifsFileAttributes attr) {
+            mAttributes = attr;
+        }
+    }
+
+    /**
+     * @return The snapshot, null if there is none or it is older than the attribute expiration period of the JcifsAuth
+     */
+    private AttributeSnapshot getAttributeSnapshot() {
+        AttributeSnapshot snapshot = mAttributeSnapshot;
+        if (snapshot == null) return null;
+        if (System.currentTimeMillis() - snapshot.mTime >= mAuth.getAttributeExpirationPeriod()) return null;
+        return snapshot;
+    }
+
+    private void invalidateAttributes() {
+        mAttributeSnapshot = null;
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        JcifsNegativeLookupCache negative_cache = mAuth.getNegativeLookupCache();
+        if (cache == null && negative_cache == null) return;
+        String key = getCacheKey();
+        if (cache != null) cache.invalidate(key);
+        if (negative_cache != null) negative_cache.remove(key);
+    }
+
+    private void invalidateParentAttributes() {
+        JcifsMetadataCache cache = mAuth.getMetadataCache();
+        if (cache == null) return;
+        String key = getCacheKey();
+        int pos;
+        while ((pos = key.lastIndexOf('/')) > "smb://".length()) {
+            key = key.substring(0, pos);
+            cache.invalidateEntry(key);
+        }
+    }
+
+    /**
+     * Discard the attributes kept by loadAttributes() and the caches of the JcifsAuth for this path, the next call
+     * asks the server. Attributes jcifs keeps in the SmbFile of a listed entry expire by themselves.
+     */
+    public void clearAttributeCache() {
+        invalidateAttributes();
     }
 
     public JcifsAuth getAuth() {
@@ -821,57 +856,14 @@ public class JcifsFile {
 
 
     public void setLastModified(long lm) throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	mSmb1File.setLastModified(lm);
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	mSmb201File.setLastModified(lm);
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	mSmb211File.setLastModified(lm);
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	mSmb212File.setLastModified(lm);
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	mSmb214File.setLastModified(lm);
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        invalidateAttributes();
+        mBackend.setLastModified(lm);
     }
 
     public long getLastModified() throws JcifsException {
-        try {
-            if (mSmbLevel==JCIFS_FILE_SMB1) {
-            	return mSmb1File.lastModified();
-            } else if (mSmbLevel==JCIFS_FILE_SMB201) {
-            	return mSmb201File.lastModified();
-            } else if (mSmbLevel==JCIFS_FILE_SMB211) {
-            	return mSmb211File.lastModified();
-            } else if (mSmbLevel==JCIFS_FILE_SMB212) {
-            	return mSmb212File.lastModified();
-            } else if (mSmbLevel==JCIFS_FILE_SMB214) {
-            	return mSmb214File.lastModified();
-            } else 
-            	throw (new JcifsException("Unknown SMB Level"));
-        } catch (jcifsng.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng211.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng212.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifsng214.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        } catch (jcifs.smb.SmbException e) {
-            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
-        }
+        JcifsFileAttributes cached_attr = getCachedAttributes();
+        if (cached_attr != null) return cached_attr.getLastModified();
+        return mBackend.lastModified();
     }
 
 }
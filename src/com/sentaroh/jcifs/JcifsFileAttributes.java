@@ -0,0 +1,91 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+/**
+ * Size, timestamp and attribute bits of a file at the time they were read from the server.
+ */
+public class JcifsFileAttributes {
+    final static private int ATTR_READONLY = 0x01;
+    final static private int ATTR_HIDDEN = 0x02;
+    final static private int ATTR_DIRECTORY = 0x10;
+
+    private final int mAttributes;
+    private final long mLength;
+    private final long mLastModified;
+
+    JcifsFileAttributes(int attributes, long length, long last_modified) {
+        mAttributes = attributes;
+        mLength = length;
+        mLastModified = last_modified;
+    }
+
+    static JcifsFileAttributes fromSmbFile(jcifs.smb.SmbFile file) throws jcifs.smb.SmbException {
+        return new JcifsFileAttributes(file.getAttributes(), file.length(), file.lastModified());
+    }
+
+    static JcifsFileAttributes fromSmbFile(jcifsng.smb.SmbFile file) throws jcifsng.smb.SmbException {
+        return new JcifsFileAttributes(file.getAttributes(), file.length(), file.lastModified());
+    }
+
+    static JcifsFileAttributes fromSmbFile(jcifsng211.smb.SmbFile file) throws jcifsng211.smb.SmbException {
+        return new JcifsFileAttributes(file.getAttributes(), file.length(), file.lastModified());
+    }
+
+    static JcifsFileAttributes fromSmbFile(jcifsng212.smb.SmbFile file) throws jcifsng212.smb.SmbException {
+        return new JcifsFileAttributes(file.getAttributes(), file.length(), file.lastModified());
+    }
+
+    static JcifsFileAttributes fromSmbFile(jcifsng214.smb.SmbFile file) throws jcifsng214.smb.SmbException {
+        return new JcifsFileAttributes(file.getAttributes(), file.length(), file.lastModified());
+    }
+
+    public int getAttributes() {
+        return mAttributes;
+    }
+
+    public long length() {
+        return mLength;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    public boolean isDirectory() {
+        return (mAttributes & ATTR_DIRECTORY) != 0;
+    }
+
+    public boolean isFile() {
+        return (mAttributes & ATTR_DIRECTORY) == 0;
+    }
+
+    public boolean isHidden() {
+        return (mAttributes & ATTR_HIDDEN) != 0;
+    }
+
+    public boolean isReadOnly() {
+        return (mAttributes & ATTR_READONLY) != 0;
+    }
+}
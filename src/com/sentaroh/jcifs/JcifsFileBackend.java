@@ -0,0 +1,211 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * SmbFile operations of one SMB level. JcifsFile binds the backend of its level once at construction and
+ * calls it without checking the level again. Each backend wraps the SmbFile of its jcifs package and converts
+ * the SmbException of that package to JcifsException. Random access, directory iteration and change notification
+ * are opened through the backend too, so a new level needs a new backend and a case in JcifsFile.newBackend() only.
+ */
+interface JcifsFileBackend {
+
+    int getSmbLevel();
+
+    boolean exists() throws JcifsException;
+
+    void delete() throws JcifsException;
+
+    void mkdir() throws JcifsException;
+
+    void mkdirs() throws JcifsException;
+
+    int getAttributes() throws JcifsException;
+
+    InputStream getInputStream() throws JcifsException;
+
+    OutputStream getOutputStream() throws JcifsException;
+
+    /**
+     * Negotiated maximum size of a read request
+     */
+    int getReadBufferSize() throws JcifsException;
+
+    /**
+     * Negotiated maximum size of a write request
+     */
+    int getWriteBufferSize() throws JcifsException;
+
+    void close() throws JcifsException;
+
+    void connect() throws JcifsException;
+
+    void createNewFile() throws JcifsException;
+
+    String getName();
+
+    String getPath();
+
+    String getCanonicalPath();
+
+    String getServer();
+
+    String getShare();
+
+    int getType() throws JcifsException;
+
+    String getUncPath();
+
+    String getParent();
+
+    boolean canRead() throws JcifsException;
+
+    boolean canWrite() throws JcifsException;
+
+    boolean isDirectory() throws JcifsException;
+
+    boolean isFile() throws JcifsException;
+
+    boolean isHidden() throws JcifsException;
+
+    long length() throws JcifsException;
+
+    String[] list() throws JcifsException;
+
+    /**
+     * @param auth JcifsAuth of the entries
+     * @return Entries, the SmbFile of each keeps the attributes of the enumeration response
+     */
+    JcifsFile[] listFiles(JcifsAuth auth) throws JcifsException;
+
+    /**
+     * @param d Destination of the same SMB level
+     */
+    void renameTo(JcifsFile d) throws JcifsException;
+
+    /**
+     * @return true if copyTo() is done by the server without passing the data through this client
+     */
+    boolean isServerSideCopySupported();
+
+    /**
+     * @param d Destination of the same SMB level, only called if isServerSideCopySupported() is true
+     */
+    void copyTo(JcifsFile d) throws JcifsException;
+
+    void setLastModified(long lm) throws JcifsException;
+
+    long lastModified() throws JcifsException;
+
+    /**
+     * Attributes kept in the SmbFile, the SmbFile asks the server for the ones it does not have
+     */
+    JcifsFileAttributes readAttributes() throws JcifsException;
+
+    /**
+     * Attributes with as few requests as the level allows
+     *
+     * @return Attributes, null if the file does not exist
+     */
+    JcifsFileAttributes loadAttributes() throws JcifsException;
+
+    /**
+     * @param mode "r" or "rw"
+     * @return An open handle with its own file pointer, independent of other handles of the same file
+     */
+    RandomAccess openRandomAccess(String mode) throws JcifsException;
+
+    /**
+     * @param auth JcifsAuth of the entries
+     * @return Iteration over the entries of the directory, in progress until it ends or is closed
+     */
+    Children children(JcifsAuth auth) throws JcifsException;
+
+    /**
+     * @param filter    FILE_NOTIFY_CHANGE_xxx combined by OR
+     * @param recursive true is also watch the subdirectories
+     * @return The watch, no request is outstanding until nextEvents() is called
+     */
+    Watch watch(int filter, boolean recursive) throws JcifsException;
+
+    /**
+     * SmbRandomAccessFile of the level
+     */
+    interface RandomAccess {
+
+        int read(byte[] buf, int off, int len) throws JcifsException;
+
+        void write(byte[] buf, int off, int len) throws JcifsException;
+
+        void seek(long pos) throws JcifsException;
+
+        long getFilePointer() throws JcifsException;
+
+        long length() throws JcifsException;
+
+        void setLength(long new_length) throws JcifsException;
+
+        void close() throws JcifsException;
+    }
+
+    /**
+     * Directory enumeration of the level
+     */
+    interface Children {
+
+        /**
+         * @return The next entry, null at the end of the directory or after close()
+         */
+        JcifsFile next() throws JcifsException;
+
+        /**
+         * May be called from another thread while next() waits
+         */
+        void close() throws JcifsException;
+    }
+
+    /**
+     * SMB2 CHANGE_NOTIFY of the level
+     */
+    interface Watch {
+
+        /**
+         * Wait for the next notify response
+         *
+         * @param dir    The watched directory
+         * @param events Receives the changes, nothing is added if the server dropped them
+         */
+        void nextEvents(JcifsFile dir, List<JcifsWatchEvent> events) throws JcifsException;
+
+        /**
+         * Cancel the outstanding request, may be called from another thread while nextEvents() waits
+         */
+        void close() throws JcifsException;
+    }
+
+}
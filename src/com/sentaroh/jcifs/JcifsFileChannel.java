@@ -0,0 +1,164 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * SeekableByteChannel over the SmbRandomAccessFile of the SMB level, returned by {@link JcifsFile#openChannel(String)}.
+ * Only the requested bytes are transferred, so a trailer or an index of a large file can be read without
+ * streaming the file from the start. JcifsException is reported as the cause of the IOException.
+ * Like other channels an instance must not be used by several threads at the same time.
+ */
+public class JcifsFileChannel implements SeekableByteChannel {
+    final static private int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private final JcifsRandomAccessFile mRaf;
+    private final boolean mWritable;
+    private long mPosition = 0;
+    private boolean mOpen = true;
+    private byte[] mTransferBuffer = null;
+
+    JcifsFileChannel(JcifsFile file, String mode) throws JcifsException {
+        if (!"r".equals(mode) && !"rw".equals(mode)) throw (new JcifsException("Invalid mode, specify \"r\" or \"rw\"."));
+        mRaf = new JcifsRandomAccessFile(file, mode);
+        mWritable = "rw".equals(mode);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        int len = dst.remaining();
+        if (len == 0) return 0;
+        try {
+            mRaf.seek(mPosition);
+            int n;
+            if (dst.hasArray()) {
+                n = mRaf.read(dst.array(), dst.arrayOffset() + dst.position(), len);
+                if (n > 0) dst.position(dst.position() + n);
+            } else {
+                byte[] buf = getTransferBuffer();
+                n = mRaf.read(buf, 0, Math.min(len, buf.length));
+                if (n > 0) dst.put(buf, 0, n);
+            }
+            if (n <= 0) return -1;
+            mPosition += n;
+            return n;
+        } catch (JcifsException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        if (!mWritable) throw new NonWritableChannelException();
+        int len = src.remaining();
+        try {
+            mRaf.seek(mPosition);
+            if (src.hasArray()) {
+                mRaf.write(src.array(), src.arrayOffset() + src.position(), len);
+                src.position(src.position() + len);
+            } else {
+                byte[] buf = getTransferBuffer();
+                while (src.hasRemaining()) {
+                    int n = Math.min(src.remaining(), buf.length);
+                    src.get(buf, 0, n);
+                    mRaf.write(buf, 0, n);
+                }
+            }
+            mPosition += len;
+            return len;
+        } catch (JcifsException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return mPosition;
+    }
+
+    @Override
+    public SeekableByteChannel position(long new_position) throws IOException {
+        ensureOpen();
+        if (new_position < 0) throw new IllegalArgumentException("new_position must be 0 or more.");
+        mPosition = new_position;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        try {
+            return mRaf.length();
+        } catch (JcifsException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        ensureOpen();
+        if (size < 0) throw new IllegalArgumentException("size must be 0 or more.");
+        if (!mWritable) throw new NonWritableChannelException();
+        try {
+            if (size < mRaf.length()) mRaf.setLength(size);
+        } catch (JcifsException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (mPosition > size) mPosition = size;
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mOpen) return;
+        mOpen = false;
+        try {
+            mRaf.close();
+        } catch (JcifsException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!mOpen) throw new ClosedChannelException();
+    }
+
+    private byte[] getTransferBuffer() {
+        if (mTransferBuffer == null) mTransferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+        return mTransferBuffer;
+    }
+}
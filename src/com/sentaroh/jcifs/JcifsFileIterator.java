@@ -0,0 +1,71 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the entries of a directory, returned by {@link JcifsFile#children()}.
+ * Entries are returned while the directory enumeration is still in progress, so memory stays bounded
+ * by one enumeration batch. Always close the iterator, also when the iteration is stopped early.
+ */
+public class JcifsFileIterator implements AutoCloseable {
+    private final JcifsFileBackend.Children mChildren;
+    private volatile boolean mClosed = false;
+    private boolean mEndOfList = false;
+
+    private JcifsFile mNext = null;
+
+    JcifsFileIterator(JcifsFile dir) throws JcifsException {
+        mChildren = dir.getBackend().children(dir.getAuth());
+    }
+
+    public boolean hasNext() throws JcifsException {
+        if (mNext != null) return true;
+        if (mClosed || mEndOfList) return false;
+        JcifsFile next = mChildren.next();
+        if (next == null || mClosed) {
+            mEndOfList = true;
+            return false;
+        }
+        next.cacheListAttributes();
+        mNext = next;
+        return true;
+    }
+
+    public JcifsFile next() throws JcifsException {
+        if (!hasNext()) throw new NoSuchElementException();
+        JcifsFile result = mNext;
+        mNext = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws JcifsException {
+        if (mClosed) return;
+        mClosed = true;
+        mNext = null;
+        mChildren.close();
+    }
+}
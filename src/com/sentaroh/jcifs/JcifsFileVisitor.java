@@ -0,0 +1,57 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+/**
+ * Callback used by {@link JcifsFile#walk(JcifsFileVisitor, JcifsWalkOptions)}.
+ * Methods are called from the walker threads concurrently, so implementations must be thread safe.
+ */
+public interface JcifsFileVisitor {
+
+    /**
+     * Called before the entries of a directory are listed.
+     *
+     * @param dir A directory
+     * @return false to skip the directory and its subtree
+     * @throws JcifsException Abort the walk
+     */
+    boolean preVisitDirectory(JcifsFile dir) throws JcifsException;
+
+    /**
+     * Called for each entry that is not a directory.
+     *
+     * @param file A file
+     * @throws JcifsException Abort the walk
+     */
+    void visitFile(JcifsFile file) throws JcifsException;
+
+    /**
+     * Called when a directory could not be listed.
+     *
+     * @param file A directory
+     * @param e    The error of listFiles()
+     * @throws JcifsException Abort the walk
+     */
+    void visitFileFailed(JcifsFile file, JcifsException e) throws JcifsException;
+}
@@ -0,0 +1,135 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+class JcifsFileWalker {
+    private final JcifsFileVisitor mVisitor;
+    private final JcifsWalkOptions mOptions;
+    private final ConcurrentHashMap<String, Semaphore> mServerPermits = new ConcurrentHashMap<String, Semaphore>();
+    private final AtomicReference<JcifsException> mAbortCause = new AtomicReference<JcifsException>();
+
+    JcifsFileWalker(JcifsFileVisitor visitor, JcifsWalkOptions options) {
+        mVisitor = visitor;
+        mOptions = options;
+    }
+
+    void walk(JcifsFile start) throws JcifsException {
+        if (!start.isDirectory()) {
+            mVisitor.visitFile(start);
+            return;
+        }
+        if (!mVisitor.preVisitDirectory(start)) return;
+
+        ForkJoinPool pool = new ForkJoinPool(mOptions.getParallelism());
+        try {
+            pool.invoke(new DirectoryTask(start, 0));
+        } finally {
+            pool.shutdown();
+        }
+        JcifsException cause = mAbortCause.get();
+        if (cause != null) throw cause;
+    }
+
+    private boolean isAborted() {
+        return mAbortCause.get() != null;
+    }
+
+    private void abort(JcifsException e) {
+        mAbortCause.compareAndSet(null, e);
+    }
+
+    private Semaphore getServerPermit(JcifsFile dir) {
+        String server = dir.getServer();
+        if (server == null) server = "";
+        Semaphore permit = mServerPermits.get(server);
+        if (permit == null) {
+            Semaphore new_permit = new Semaphore(mOptions.getMaxListingsPerServer());
+            permit = mServerPermits.putIfAbsent(server, new_permit);
+            if (permit == null) permit = new_permit;
+        }
+        return permit;
+    }
+
+    private JcifsFile[] listDirectory(JcifsFile dir) throws JcifsException {
+        Semaphore permit = getServerPermit(dir);
+        try {
+            // A parked worker is not replaced, so the walk never runs more threads than its parallelism
+            permit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JcifsException("Walk was interrupted.");
+        }
+        try {
+            return dir.listFiles();
+        } finally {
+            permit.release();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction {
+        private final JcifsFile mDir;
+        private final int mDepth;
+
+        DirectoryTask(JcifsFile dir, int depth) {
+            mDir = dir;
+            mDepth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (isAborted()) return;
+            try {
+                JcifsFile[] children = null;
+                try {
+                    children = listDirectory(mDir);
+                } catch (JcifsException e) {
+                    mVisitor.visitFileFailed(mDir, e);
+                    return;
+                }
+                if (children == null) return;
+
+                ArrayList<DirectoryTask> sub_tasks = new ArrayList<DirectoryTask>();
+                for (JcifsFile child : children) {
+                    if (isAborted()) return;
+                    if (child.isDirectory() && mDepth < mOptions.getMaxDepth()) {
+                        if (mVisitor.preVisitDirectory(child)) sub_tasks.add(new DirectoryTask(child, mDepth + 1));
+                    } else {
+                        mVisitor.visitFile(child);
+                    }
+                }
+                if (sub_tasks.size() > 0) invokeAll(sub_tasks);
+            } catch (JcifsException e) {
+                abort(e);
+            }
+        }
+    }
+}
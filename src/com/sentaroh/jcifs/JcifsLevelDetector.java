@@ -0,0 +1,182 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SMB level detection of {@link JcifsUtil#detectBestSmbLevel}. A probe connects to the server with one level and
+ * succeeds if the negotiate succeeded; a session setup or tree connect refused with an NT status (wrong password,
+ * no guest access) still proves the dialect. The probes of all candidates run concurrently, so the detection takes
+ * one handshake, and the newest working level is the result. The result is cached per host for the TTL,
+ * a host that no level could connect to for a shorter time.
+ * <p>
+ * SMB214 negotiates SMB 2.0.2 to 3.1.1, so SMB212, SMB211 and SMB201 would only succeed where SMB214 does
+ * and are not candidates.
+ */
+final class JcifsLevelDetector {
+    private static final Logger log = LoggerFactory.getLogger(JcifsLevelDetector.class);
+
+    final static private long DEFAULT_CACHE_TTL = 10 * 60 * 1000L;
+    final static private long FAILED_CACHE_TTL = 30 * 1000L;
+    final static private long PROBE_TIMEOUT_MILLIS = 15000L;
+
+    // Newest first, the first working level is the result
+    final static private int[] CANDIDATE_LEVELS = new int[]{JcifsAuth.JCIFS_FILE_SMB214, JcifsAuth.JCIFS_FILE_SMB1};
+
+    // Errors of session setup and tree connect, the negotiate before them succeeded
+    final static private int[] NEGOTIATED_NT_STATUS = new int[]{
+            0xC0000022, // ACCESS_DENIED
+            0xC0000064, // NO_SUCH_USER
+            0xC000006A, // WRONG_PASSWORD
+            0xC000006D, // LOGON_FAILURE
+            0xC000006E, // ACCOUNT_RESTRICTION
+            0xC000006F, // INVALID_LOGON_HOURS
+            0xC0000070, // INVALID_WORKSTATION
+            0xC0000071, // PASSWORD_EXPIRED
+            0xC0000072, // ACCOUNT_DISABLED
+            0xC00000CC, // BAD_NETWORK_NAME
+            0xC000015B, // LOGON_TYPE_NOT_GRANTED
+            0xC0000224, // PASSWORD_MUST_CHANGE
+            0xC0000234, // ACCOUNT_LOCKED_OUT
+    };
+
+    private static final ConcurrentHashMap<String, long[]> mCache = new ConcurrentHashMap<String, long[]>();
+    private static volatile long mCacheTtl = DEFAULT_CACHE_TTL;
+    private static ExecutorService mExecutor = null;
+
+    private JcifsLevelDetector() {
+    }
+
+    synchronized private static ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread th = new Thread(r);
+                    th.setName("JcifsLevelProbe-" + mCount.incrementAndGet());
+                    th.setDaemon(true);
+                    return th;
+                }
+            });
+        }
+        return mExecutor;
+    }
+
+    static void setCacheTtl(long ttl) {
+        if (ttl < 0) throw new IllegalArgumentException("ttl must not be negative.");
+        mCacheTtl = ttl;
+    }
+
+    static long getCacheTtl() {
+        return mCacheTtl;
+    }
+
+    static void clearCache() {
+        mCache.clear();
+    }
+
+    /**
+     * @return JCIFS_FILE_SMBxxx, 0 if no level could connect
+     */
+    static int detect(String host, final String domain, final String user, final String pass, final Properties prop) {
+        String key = host.toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        long[] cached = mCache.get(key);
+        if (cached != null && cached[1] - now > 0) return (int) cached[0];
+
+        final String url = "smb://" + host + "/";
+        ArrayList<Future<Boolean>> probes = new ArrayList<Future<Boolean>>(CANDIDATE_LEVELS.length);
+        for (final int level : CANDIDATE_LEVELS) {
+            probes.add(getExecutor().submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return probe(url, level, domain, user, pass, prop);
+                }
+            }));
+        }
+        int result = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MILLIS);
+        try {
+            for (int i = 0; i < CANDIDATE_LEVELS.length; i++) {
+                try {
+                    if (probes.get(i).get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+                        result = CANDIDATE_LEVELS[i];
+                        break;
+                    }
+                } catch (TimeoutException e) {
+                    log.debug("detect " + host + " level " + CANDIDATE_LEVELS[i] + " timed out");
+                } catch (ExecutionException e) {
+                    log.debug("detect " + host + " level " + CANDIDATE_LEVELS[i] + " failed", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // The probes still running close their JcifsAuth when they end
+            for (Future<Boolean> f : probes) f.cancel(true);
+        }
+        long ttl = result != 0 ? mCacheTtl : Math.min(mCacheTtl, FAILED_CACHE_TTL);
+        if (ttl > 0) mCache.put(key, new long[]{result, System.currentTimeMillis() + ttl});
+        return result;
+    }
+
+    private static boolean probe(String url, int level, String domain, String user, String pass, Properties prop) {
+        long start = System.nanoTime();
+        JcifsAuth auth = null;
+        try {
+            auth = JcifsAuth.createShared(level, domain, user, pass, prop);
+            new JcifsFile(url, auth).connect();
+            return true;
+        } catch (JcifsException e) {
+            for (int nt_status : NEGOTIATED_NT_STATUS) {
+                if (e.getNtStatus() == nt_status) return true;
+            }
+            return false;
+        } catch (MalformedURLException e) {
+            return false;
+        } finally {
+            if (auth != null) auth.close();
+            if (log.isDebugEnabled()) log.debug("probe " + url + " level " + level + " " + (System.nanoTime() - start) / 1000000 + "ms");
+        }
+    }
+}
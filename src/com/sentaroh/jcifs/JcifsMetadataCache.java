@@ -0,0 +1,186 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opt-in cache of file metadata, set to a JcifsAuth by {@link JcifsAuth#setMetadataCache}. JcifsFile of that
+ * JcifsAuth answer exists(), isDirectory(), isFile(), length(), getLastModified(), getAttributes(), canRead() and
+ * canWrite() from the cache while the entry is younger than the TTL. The least recently used entry is evicted
+ * when the cache is full.
+ * <p>
+ * Changes made through JcifsFile of the same JcifsAuth invalidate the entry of the changed path and of the paths
+ * below it. Changes made by other clients are seen only after the TTL expired.
+ */
+public class JcifsMetadataCache {
+    final static public long DEFAULT_TTL = 5000L;
+    final static public int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final long mTtl;
+    private final int mMaxEntries;
+
+    private final LinkedHashMap<String, CacheEntry> mEntries;
+
+    private static class CacheEntry {
+        private final long mExpireTime;
+        private JcifsFileAttributes mAttributes = null;
+        private Boolean mExists = null;
+        private Boolean mCanRead = null;
+        private Boolean mCanWrite = null;
+
+        private CacheEntry(long expire_time) {
+            mExpireTime = expire_time;
+        }
+    }
+
+    public JcifsMetadataCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttl         Time in milliseconds an entry is used
+     * @param max_entries Maximum number of paths kept
+     */
+    public JcifsMetadataCache(long ttl, int max_entries) {
+        if (ttl <= 0) throw new IllegalArgumentException("ttl must be greater than 0.");
+        if (max_entries <= 0) throw new IllegalArgumentException("max_entries must be greater than 0.");
+        mTtl = ttl;
+        mMaxEntries = max_entries;
+        mEntries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > mMaxEntries;
+            }
+        };
+    }
+
+    public long getTtl() {
+        return mTtl;
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    synchronized JcifsFileAttributes getAttributes(String key) {
+        CacheEntry entry = getEntry(key);
+        return entry == null ? null : entry.mAttributes;
+    }
+
+    synchronized Boolean getExists(String key) {
+        CacheEntry entry = getEntry(key);
+        if (entry == null) return null;
+        if (entry.mAttributes != null) return Boolean.TRUE;
+        return entry.mExists;
+    }
+
+    synchronized Boolean getCanRead(String key) {
+        CacheEntry entry = getEntry(key);
+        return entry == null ? null : entry.mCanRead;
+    }
+
+    synchronized Boolean getCanWrite(String key) {
+        CacheEntry entry = getEntry(key);
+        return entry == null ? null : entry.mCanWrite;
+    }
+
+    synchronized void putAttributes(String key, JcifsFileAttributes attr) {
+        CacheEntry entry = getOrCreateEntry(key);
+        entry.mAttributes = attr;
+        entry.mExists = Boolean.TRUE;
+    }
+
+    synchronized void putExists(String key, boolean exists) {
+        CacheEntry entry = getOrCreateEntry(key);
+        entry.mExists = exists;
+        if (!exists) entry.mAttributes = null;
+    }
+
+    synchronized void putCanRead(String key, boolean can_read) {
+        getOrCreateEntry(key).mCanRead = can_read;
+    }
+
+    synchronized void putCanWrite(String key, boolean can_write) {
+        getOrCreateEntry(key).mCanWrite = can_write;
+    }
+
+    /**
+     * Remove the entry of key and of all paths below it.
+     */
+    synchronized void invalidate(String key) {
+        mEntries.remove(key);
+        String prefix = key + "/";
+        Iterator<String> it = mEntries.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(prefix)) it.remove();
+        }
+    }
+
+    /**
+     * Remove the entry of key only.
+     */
+    synchronized void invalidateEntry(String key) {
+        mEntries.remove(key);
+    }
+
+    private CacheEntry getEntry(String key) {
+        CacheEntry entry = mEntries.get(key);
+        if (entry == null) return null;
+        if (entry.mExpireTime - System.currentTimeMillis() <= 0) {
+            mEntries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private CacheEntry getOrCreateEntry(String key) {
+        CacheEntry entry = getEntry(key);
+        if (entry == null) {
+            entry = new CacheEntry(System.currentTimeMillis() + mTtl);
+            mEntries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Cache key of a path, the trailing "/" of a directory is removed so both forms of the path share the entry.
+     */
+    static String toKey(String path) {
+        if (path.length() > 1 && path.endsWith("/")) return path.substring(0, path.length() - 1);
+        return path;
+    }
+}
@@ -0,0 +1,712 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Backend that times each call of the backend of the level and reports it to the JcifsMetrics of the JcifsAuth
+ * and to the JcifsTracer of the process. JcifsFile binds it in place of the level backend only when either is
+ * set, so files without them keep calling the level backend directly. The streams and random access handles
+ * are wrapped to report each read and write call.
+ */
+final class JcifsMeteredBackend implements JcifsFileBackend {
+
+    private final JcifsFileBackend mBackend;
+    private final JcifsMetrics mMetrics;
+    private final JcifsTracer mTracer;
+    private final int mSmbLevel;
+    private final String mServer;
+    private final String mUrl;
+
+    /**
+     * @param metrics Metrics of the JcifsAuth, null if none
+     * @param tracer  Tracer of the process, null if none
+     */
+    JcifsMeteredBackend(JcifsFileBackend backend, JcifsMetrics metrics, JcifsTracer tracer) {
+        mBackend = backend;
+        mMetrics = metrics;
+        mTracer = tracer;
+        mSmbLevel = backend.getSmbLevel();
+        mServer = backend.getServer();
+        mUrl = tracer == null ? null : backend.getPath();
+    }
+
+    /**
+     * The backend of the level
+     */
+    JcifsFileBackend getDelegate() {
+        return mBackend;
+    }
+
+    /**
+     * @return Span of the tracer, null if there is no tracer or it does not trace the operation
+     */
+    Object begin(int operation) {
+        return mTracer == null ? null : mTracer.begin(operation, mSmbLevel, mUrl);
+    }
+
+    /**
+     * @param bytes Bytes moved by a stream read or write
+     */
+    void succeeded(int operation, long start, Object span, long bytes) {
+        if (mMetrics != null) {
+            mMetrics.onOperation(operation, mSmbLevel, mServer, System.nanoTime() - start);
+            if (bytes > 0) {
+                if (operation == JcifsMetrics.OP_READ) mMetrics.onBytesRead(mSmbLevel, mServer, bytes);
+                else if (operation == JcifsMetrics.OP_WRITE) mMetrics.onBytesWritten(mSmbLevel, mServer, bytes);
+            }
+        }
+        if (span != null) mTracer.end(span, true, bytes, 0);
+    }
+
+    void failed(int operation, long start, Object span, int nt_status) {
+        if (mMetrics != null) mMetrics.onError(operation, mSmbLevel, mServer, System.nanoTime() - start, nt_status);
+        if (span != null) mTracer.end(span, false, 0, nt_status);
+    }
+
+    @Override
+    public int getSmbLevel() {
+        return mBackend.getSmbLevel();
+    }
+
+    @Override
+    public boolean exists() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_EXISTS);
+        try {
+            boolean result = mBackend.exists();
+            succeeded(JcifsMetrics.OP_EXISTS, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_EXISTS, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_DELETE);
+        try {
+            mBackend.delete();
+            succeeded(JcifsMetrics.OP_DELETE, start, span, 0);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_DELETE, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public void mkdir() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_MKDIR);
+        try {
+            mBackend.mkdir();
+            succeeded(JcifsMetrics.OP_MKDIR, start, span, 0);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_MKDIR, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public void mkdirs() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_MKDIRS);
+        try {
+            mBackend.mkdirs();
+            succeeded(JcifsMetrics.OP_MKDIRS, start, span, 0);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_MKDIRS, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public int getAttributes() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_GET_ATTRIBUTES);
+        try {
+            int result = mBackend.getAttributes();
+            succeeded(JcifsMetrics.OP_GET_ATTRIBUTES, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_GET_ATTRIBUTES, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_OPEN_INPUT);
+        try {
+            InputStream stream = mBackend.getInputStream();
+            succeeded(JcifsMetrics.OP_OPEN_INPUT, start, span, 0);
+            return new MeteredInputStream(stream, this);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_OPEN_INPUT, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_OPEN_OUTPUT);
+        try {
+            OutputStream stream = mBackend.getOutputStream();
+            succeeded(JcifsMetrics.OP_OPEN_OUTPUT, start, span, 0);
+            return new MeteredOutputStream(stream, this);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_OPEN_OUTPUT, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public int getReadBufferSize() throws JcifsException {
+        return mBackend.getReadBufferSize();
+    }
+
+    @Override
+    public int getWriteBufferSize() throws JcifsException {
+        return mBackend.getWriteBufferSize();
+    }
+
+    @Override
+    public void close() throws JcifsException {
+        mBackend.close();
+    }
+
+    @Override
+    public void connect() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_CONNECT);
+        try {
+            mBackend.connect();
+            succeeded(JcifsMetrics.OP_CONNECT, start, span, 0);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_CONNECT, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public void createNewFile() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_CREATE_NEW);
+        try {
+            mBackend.createNewFile();
+            succeeded(JcifsMetrics.OP_CREATE_NEW, start, span, 0);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_CREATE_NEW, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return mBackend.getName();
+    }
+
+    @Override
+    public String getPath() {
+        return mBackend.getPath();
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return mBackend.getCanonicalPath();
+    }
+
+    @Override
+    public String getServer() {
+        return mBackend.getServer();
+    }
+
+    @Override
+    public String getShare() {
+        return mBackend.getShare();
+    }
+
+    @Override
+    public int getType() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_GET_TYPE);
+        try {
+            int result = mBackend.getType();
+            succeeded(JcifsMetrics.OP_GET_TYPE, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_GET_TYPE, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public String getUncPath() {
+        return mBackend.getUncPath();
+    }
+
+    @Override
+    public String getParent() {
+        return mBackend.getParent();
+    }
+
+    @Override
+    public boolean canRead() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_CAN_READ);
+        try {
+            boolean result = mBackend.canRead();
+            succeeded(JcifsMetrics.OP_CAN_READ, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_CAN_READ, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean canWrite() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_CAN_WRITE);
+        try {
+            boolean result = mBackend.canWrite();
+            succeeded(JcifsMetrics.OP_CAN_WRITE, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_CAN_WRITE, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isDirectory() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_IS_DIRECTORY);
+        try {
+            boolean result = mBackend.isDirectory();
+            succeeded(JcifsMetrics.OP_IS_DIRECTORY, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_IS_DIRECTORY, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isFile() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_IS_FILE);
+        try {
+            boolean result = mBackend.isFile();
+            succeeded(JcifsMetrics.OP_IS_FILE, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_IS_FILE, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isHidden() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_IS_HIDDEN);
+        try {
+            boolean result = mBackend.isHidden();
+            succeeded(JcifsMetrics.OP_IS_HIDDEN, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_IS_HIDDEN, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public long length() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_LENGTH);
+        try {
+            long result = mBackend.length();
+            succeeded(JcifsMetrics.OP_LENGTH, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_LENGTH, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public String[] list() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_LIST);
+        try {
+            String[] result = mBackend.list();
+            succeeded(JcifsMetrics.OP_LIST, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_LIST, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public JcifsFile[] listFiles(JcifsAuth auth) throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_LIST);
+        try {
+            JcifsFile[] result = mBackend.listFiles(auth);
+            succeeded(JcifsMetrics.OP_LIST, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_LIST, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public void renameTo(JcifsFile d) throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_RENAME);
+        try {
+            mBackend.renameTo(d);
+            succeeded(JcifsMetrics.OP_RENAME, start, span, 0);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_RENAME, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isServerSideCopySupported() {
+        return mBackend.isServerSideCopySupported();
+    }
+
+    @Override
+    public void copyTo(JcifsFile d) throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_COPY);
+        try {
+            mBackend.copyTo(d);
+            succeeded(JcifsMetrics.OP_COPY, start, span, 0);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_COPY, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public void setLastModified(long lm) throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_SET_LAST_MODIFIED);
+        try {
+            mBackend.setLastModified(lm);
+            succeeded(JcifsMetrics.OP_SET_LAST_MODIFIED, start, span, 0);
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_SET_LAST_MODIFIED, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public long lastModified() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_GET_LAST_MODIFIED);
+        try {
+            long result = mBackend.lastModified();
+            succeeded(JcifsMetrics.OP_GET_LAST_MODIFIED, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_GET_LAST_MODIFIED, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public JcifsFileAttributes readAttributes() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_LOAD_ATTRIBUTES);
+        try {
+            JcifsFileAttributes result = mBackend.readAttributes();
+            succeeded(JcifsMetrics.OP_LOAD_ATTRIBUTES, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_LOAD_ATTRIBUTES, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public JcifsFileAttributes loadAttributes() throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_LOAD_ATTRIBUTES);
+        try {
+            JcifsFileAttributes result = mBackend.loadAttributes();
+            succeeded(JcifsMetrics.OP_LOAD_ATTRIBUTES, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_LOAD_ATTRIBUTES, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public RandomAccess openRandomAccess(String mode) throws JcifsException {
+        int operation = "r".equals(mode) ? JcifsMetrics.OP_OPEN_INPUT : JcifsMetrics.OP_OPEN_OUTPUT;
+        long start = System.nanoTime();
+        Object span = begin(operation);
+        try {
+            RandomAccess raf = mBackend.openRandomAccess(mode);
+            succeeded(operation, start, span, 0);
+            return new MeteredRandomAccess(raf, this);
+        } catch (JcifsException e) {
+            failed(operation, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public Children children(JcifsAuth auth) throws JcifsException {
+        long start = System.nanoTime();
+        Object span = begin(JcifsMetrics.OP_LIST);
+        try {
+            Children result = mBackend.children(auth);
+            succeeded(JcifsMetrics.OP_LIST, start, span, 0);
+            return result;
+        } catch (JcifsException e) {
+            failed(JcifsMetrics.OP_LIST, start, span, e.getNtStatus());
+            throw e;
+        }
+    }
+
+    @Override
+    public Watch watch(int filter, boolean recursive) throws JcifsException {
+        return mBackend.watch(filter, recursive);
+    }
+
+    /**
+     * NT status of an exception thrown by the streams of any level, 0 if it has none
+     */
+    static int getNtStatus(Throwable e) {
+        if (e instanceof JcifsException) return ((JcifsException) e).getNtStatus();
+        if (e instanceof jcifs.smb.SmbException) return ((jcifs.smb.SmbException) e).getNtStatus();
+        if (e instanceof jcifsng.smb.SmbException) return ((jcifsng.smb.SmbException) e).getNtStatus();
+        if (e instanceof jcifsng211.smb.SmbException) return ((jcifsng211.smb.SmbException) e).getNtStatus();
+        if (e instanceof jcifsng212.smb.SmbException) return ((jcifsng212.smb.SmbException) e).getNtStatus();
+        if (e instanceof jcifsng214.smb.SmbException) return ((jcifsng214.smb.SmbException) e).getNtStatus();
+        return 0;
+    }
+
+    private static class MeteredInputStream extends InputStream {
+        private final InputStream mIn;
+        private final JcifsMeteredBackend mOwner;
+
+        MeteredInputStream(InputStream in, JcifsMeteredBackend owner) {
+            mIn = in;
+            mOwner = owner;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_READ);
+            try {
+                int b = mIn.read();
+                mOwner.succeeded(JcifsMetrics.OP_READ, start, span, b >= 0 ? 1 : 0);
+                return b;
+            } catch (IOException e) {
+                mOwner.failed(JcifsMetrics.OP_READ, start, span, getNtStatus(e));
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_READ);
+            try {
+                int n = mIn.read(b, off, len);
+                mOwner.succeeded(JcifsMetrics.OP_READ, start, span, Math.max(n, 0));
+                return n;
+            } catch (IOException e) {
+                mOwner.failed(JcifsMetrics.OP_READ, start, span, getNtStatus(e));
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return mIn.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return mIn.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_CLOSE_STREAM);
+            try {
+                mIn.close();
+                mOwner.succeeded(JcifsMetrics.OP_CLOSE_STREAM, start, span, 0);
+            } catch (IOException e) {
+                mOwner.failed(JcifsMetrics.OP_CLOSE_STREAM, start, span, getNtStatus(e));
+                throw e;
+            }
+        }
+    }
+
+    private static class MeteredOutputStream extends OutputStream {
+        private final OutputStream mOut;
+        private final JcifsMeteredBackend mOwner;
+
+        MeteredOutputStream(OutputStream out, JcifsMeteredBackend owner) {
+            mOut = out;
+            mOwner = owner;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_WRITE);
+            try {
+                mOut.write(b);
+                mOwner.succeeded(JcifsMetrics.OP_WRITE, start, span, 1);
+            } catch (IOException e) {
+                mOwner.failed(JcifsMetrics.OP_WRITE, start, span, getNtStatus(e));
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_WRITE);
+            try {
+                mOut.write(b, off, len);
+                mOwner.succeeded(JcifsMetrics.OP_WRITE, start, span, len);
+            } catch (IOException e) {
+                mOwner.failed(JcifsMetrics.OP_WRITE, start, span, getNtStatus(e));
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_CLOSE_STREAM);
+            try {
+                mOut.close();
+                mOwner.succeeded(JcifsMetrics.OP_CLOSE_STREAM, start, span, 0);
+            } catch (IOException e) {
+                mOwner.failed(JcifsMetrics.OP_CLOSE_STREAM, start, span, getNtStatus(e));
+                throw e;
+            }
+        }
+    }
+
+
+    private static class MeteredRandomAccess implements RandomAccess {
+        private final RandomAccess mRaf;
+        private final JcifsMeteredBackend mOwner;
+
+        MeteredRandomAccess(RandomAccess raf, JcifsMeteredBackend owner) {
+            mRaf = raf;
+            mOwner = owner;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws JcifsException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_READ);
+            try {
+                int n = mRaf.read(buf, off, len);
+                mOwner.succeeded(JcifsMetrics.OP_READ, start, span, Math.max(n, 0));
+                return n;
+            } catch (JcifsException e) {
+                mOwner.failed(JcifsMetrics.OP_READ, start, span, e.getNtStatus());
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws JcifsException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_WRITE);
+            try {
+                mRaf.write(buf, off, len);
+                mOwner.succeeded(JcifsMetrics.OP_WRITE, start, span, len);
+            } catch (JcifsException e) {
+                mOwner.failed(JcifsMetrics.OP_WRITE, start, span, e.getNtStatus());
+                throw e;
+            }
+        }
+
+        @Override
+        public void seek(long pos) throws JcifsException {
+            mRaf.seek(pos);
+        }
+
+        @Override
+        public long getFilePointer() throws JcifsException {
+            return mRaf.getFilePointer();
+        }
+
+        @Override
+        public long length() throws JcifsException {
+            return mRaf.length();
+        }
+
+        @Override
+        public void setLength(long new_length) throws JcifsException {
+            mRaf.setLength(new_length);
+        }
+
+        @Override
+        public void close() throws JcifsException {
+            long start = System.nanoTime();
+            Object span = mOwner.begin(JcifsMetrics.OP_CLOSE_STREAM);
+            try {
+                mRaf.close();
+                mOwner.succeeded(JcifsMetrics.OP_CLOSE_STREAM, start, span, 0);
+            } catch (JcifsException e) {
+                mOwner.failed(JcifsMetrics.OP_CLOSE_STREAM, start, span, e.getNtStatus());
+                throw e;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+/**
+ * Receives the timing of each server operation of JcifsFile, set to a JcifsAuth by {@link JcifsAuth#setMetrics}.
+ * The calls are made on the thread of the operation after it completed, so an implementation must be thread safe
+ * and should return quickly. Answers from loadAttributes() or the metadata cache are not operations.
+ * <p>
+ * Stream reads and writes are reported per call of read()/write() of the streams returned by
+ * getInputStream()/getOutputStream(), with the number of bytes moved.
+ * OP_RESOLVE_NAME to OP_PORT_CHECK are the lookups of JcifsUtil, they have no JcifsAuth and are reported to
+ * the {@link JcifsTracer} only. See {@link JcifsMetricsRecorder} for the default implementation.
+ */
+public interface JcifsMetrics {
+    int OP_EXISTS = 0;
+    int OP_DELETE = 1;
+    int OP_MKDIR = 2;
+    int OP_MKDIRS = 3;
+    int OP_CREATE_NEW = 4;
+    int OP_GET_ATTRIBUTES = 5;
+    int OP_GET_TYPE = 6;
+    int OP_CAN_READ = 7;
+    int OP_CAN_WRITE = 8;
+    int OP_IS_DIRECTORY = 9;
+    int OP_IS_FILE = 10;
+    int OP_IS_HIDDEN = 11;
+    int OP_LENGTH = 12;
+    int OP_GET_LAST_MODIFIED = 13;
+    int OP_SET_LAST_MODIFIED = 14;
+    int OP_LOAD_ATTRIBUTES = 15;
+    int OP_LIST = 16;
+    int OP_RENAME = 17;
+    int OP_COPY = 18;
+    int OP_CONNECT = 19;
+    int OP_OPEN_INPUT = 20;
+    int OP_OPEN_OUTPUT = 21;
+    int OP_READ = 22;
+    int OP_WRITE = 23;
+    int OP_CLOSE_STREAM = 24;
+    int OP_RESOLVE_NAME = 25;
+    int OP_RESOLVE_ADDRESS = 26;
+    int OP_NETBIOS_STATUS = 27;
+    int OP_PORT_CHECK = 28;
+
+    int OPERATION_COUNT = 29;
+
+    /**
+     * @param operation     OP_xxx
+     * @param smb_level     JCIFS_FILE_SMBxxx of the JcifsAuth
+     * @param server        Server name of the URL
+     * @param elapsed_nanos Time of the operation
+     */
+    void onOperation(int operation, int smb_level, String server, long elapsed_nanos);
+
+    /**
+     * The operation failed with an exception
+     *
+     * @param nt_status NT status of the SmbException, 0 if the error has none
+     */
+    void onError(int operation, int smb_level, String server, long elapsed_nanos, int nt_status);
+
+    /**
+     * @param bytes Bytes returned by one read call of the input stream
+     */
+    void onBytesRead(int smb_level, String server, long bytes);
+
+    /**
+     * @param bytes Bytes passed to one write call of the output stream
+     */
+    void onBytesWritten(int smb_level, String server, long bytes);
+}
@@ -0,0 +1,274 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Default JcifsMetrics. Keeps, per server and SMB level, a latency histogram and count of each operation,
+ * the bytes read and written through the streams and the error count of each NT status.
+ * <p>
+ * Recording allocates nothing once the server and level have been seen: the counters are preallocated atomic
+ * arrays, the histogram has 4 buckets per power of two of nanoseconds (at most 25% wide) and the NT status
+ * counters are an open addressing table of MAX_ERROR_STATUSES entries. Errors of further statuses and errors
+ * without an NT status are counted under status 0. The getters build snapshots and may allocate.
+ */
+public class JcifsMetricsRecorder implements JcifsMetrics {
+    final static public int MAX_ERROR_STATUSES = 64;
+
+    final static private String[] OPERATION_NAMES = new String[]{
+            "exists", "delete", "mkdir", "mkdirs", "createNew", "getAttributes", "getType", "canRead", "canWrite",
+            "isDirectory", "isFile", "isHidden", "length", "getLastModified", "setLastModified", "loadAttributes",
+            "list", "renameTo", "copyTo", "connect", "openInput", "openOutput", "read", "write", "closeStream",
+            "resolveName", "resolveAddress", "netbiosStatus", "portCheck"};
+
+    final static private int SUB_BUCKET_BITS = 2;
+    final static private int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Up to 2^47 ns (about 39 hours), longer times are counted in the last bucket
+    final static private int MAX_EXPONENT = 47;
+    final static int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    final static private int COUNTER_COUNT = 0;
+    final static private int COUNTER_ERRORS = 1;
+    final static private int COUNTER_TOTAL_NANOS = 2;
+    final static private int COUNTER_MAX_NANOS = 3;
+    final static private int COUNTERS_PER_OPERATION = 4;
+
+    final static private String NULL_SERVER = "";
+    final static private int LEVEL_SLOTS = JcifsAuth.JCIFS_FILE_SMB214 + 1;
+
+    private final ConcurrentHashMap<String, AtomicReferenceArray<LevelStats>> mServers =
+            new ConcurrentHashMap<String, AtomicReferenceArray<LevelStats>>();
+
+    private static class LevelStats {
+        final AtomicLongArray histograms = new AtomicLongArray(OPERATION_COUNT * BUCKET_COUNT);
+        final AtomicLongArray counters = new AtomicLongArray(OPERATION_COUNT * COUNTERS_PER_OPERATION);
+        final AtomicLong bytesRead = new AtomicLong(0);
+        final AtomicLong bytesWritten = new AtomicLong(0);
+        final AtomicIntegerArray errorStatuses = new AtomicIntegerArray(MAX_ERROR_STATUSES);
+        final AtomicLongArray errorCounts = new AtomicLongArray(MAX_ERROR_STATUSES);
+        final AtomicLong otherErrors = new AtomicLong(0);
+    }
+
+    @Override
+    public void onOperation(int operation, int smb_level, String server, long elapsed_nanos) {
+        LevelStats stats = getStats(smb_level, server);
+        if (stats == null || operation < 0 || operation >= OPERATION_COUNT) return;
+        record(stats, operation, elapsed_nanos);
+    }
+
+    @Override
+    public void onError(int operation, int smb_level, String server, long elapsed_nanos, int nt_status) {
+        LevelStats stats = getStats(smb_level, server);
+        if (stats == null || operation < 0 || operation >= OPERATION_COUNT) return;
+        record(stats, operation, elapsed_nanos);
+        stats.counters.incrementAndGet(operation * COUNTERS_PER_OPERATION + COUNTER_ERRORS);
+        countError(stats, nt_status);
+    }
+
+    @Override
+    public void onBytesRead(int smb_level, String server, long bytes) {
+        LevelStats stats = getStats(smb_level, server);
+        if (stats != null) stats.bytesRead.addAndGet(bytes);
+    }
+
+    @Override
+    public void onBytesWritten(int smb_level, String server, long bytes) {
+        LevelStats stats = getStats(smb_level, server);
+        if (stats != null) stats.bytesWritten.addAndGet(bytes);
+    }
+
+    private LevelStats getStats(int smb_level, String server) {
+        if (smb_level < 0 || smb_level >= LEVEL_SLOTS) return null;
+        String key = server == null ? NULL_SERVER : server;
+        AtomicReferenceArray<LevelStats> levels = mServers.get(key);
+        if (levels == null) {
+            AtomicReferenceArray<LevelStats> created = new AtomicReferenceArray<LevelStats>(LEVEL_SLOTS);
+            levels = mServers.putIfAbsent(key, created);
+            if (levels == null) levels = created;
+        }
+        LevelStats stats = levels.get(smb_level);
+        if (stats == null) {
+            levels.compareAndSet(smb_level, null, new LevelStats());
+            stats = levels.get(smb_level);
+        }
+        return stats;
+    }
+
+    private static void record(LevelStats stats, int operation, long elapsed_nanos) {
+        long nanos = Math.max(elapsed_nanos, 0);
+        int base = operation * COUNTERS_PER_OPERATION;
+        stats.histograms.incrementAndGet(operation * BUCKET_COUNT + bucketOf(nanos));
+        stats.counters.incrementAndGet(base + COUNTER_COUNT);
+        stats.counters.addAndGet(base + COUNTER_TOTAL_NANOS, nanos);
+        long max;
+        while ((max = stats.counters.get(base + COUNTER_MAX_NANOS)) < nanos) {
+            if (stats.counters.compareAndSet(base + COUNTER_MAX_NANOS, max, nanos)) break;
+        }
+    }
+
+    private static void countError(LevelStats stats, int nt_status) {
+        if (nt_status == 0) {
+            stats.otherErrors.incrementAndGet();
+            return;
+        }
+        int start = (nt_status ^ (nt_status >>> 16)) & (MAX_ERROR_STATUSES - 1);
+        for (int i = 0; i < MAX_ERROR_STATUSES; i++) {
+            int slot = (start + i) & (MAX_ERROR_STATUSES - 1);
+            int current = stats.errorStatuses.get(slot);
+            if (current == 0 && stats.errorStatuses.compareAndSet(slot, 0, nt_status)) current = nt_status;
+            else if (current == 0) current = stats.errorStatuses.get(slot);
+            if (current == nt_status) {
+                stats.errorCounts.incrementAndGet(slot);
+                return;
+            }
+        }
+        stats.otherErrors.incrementAndGet();
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return Smallest time in nanoseconds counted in the bucket
+     */
+    static long bucketLowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @return Name of OP_xxx, for reports
+     */
+    public static String getOperationName(int operation) {
+        if (operation < 0 || operation >= OPERATION_NAMES.length) return "unknown(" + operation + ")";
+        return OPERATION_NAMES[operation];
+    }
+
+    /**
+     * @return Servers seen, "" for files whose URL has no server
+     */
+    public Set<String> getServers() {
+        return Collections.unmodifiableSet(new TreeSet<String>(mServers.keySet()));
+    }
+
+    /**
+     * @return Snapshot of the operation, null if it was not recorded for the server and level
+     */
+    public JcifsOperationStats getOperationStats(String server, int smb_level, int operation) {
+        LevelStats stats = peekStats(server, smb_level);
+        if (stats == null || operation < 0 || operation >= OPERATION_COUNT) return null;
+        int base = operation * COUNTERS_PER_OPERATION;
+        long count = stats.counters.get(base + COUNTER_COUNT);
+        if (count == 0) return null;
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) buckets[i] = stats.histograms.get(operation * BUCKET_COUNT + i);
+        return new JcifsOperationStats(operation, count, stats.counters.get(base + COUNTER_ERRORS),
+                stats.counters.get(base + COUNTER_TOTAL_NANOS), stats.counters.get(base + COUNTER_MAX_NANOS), buckets);
+    }
+
+    public long getBytesRead(String server, int smb_level) {
+        LevelStats stats = peekStats(server, smb_level);
+        return stats == null ? 0 : stats.bytesRead.get();
+    }
+
+    public long getBytesWritten(String server, int smb_level) {
+        LevelStats stats = peekStats(server, smb_level);
+        return stats == null ? 0 : stats.bytesWritten.get();
+    }
+
+    /**
+     * @return Error count of each NT status, status 0 counts errors without an NT status and statuses
+     * that did not fit in the table
+     */
+    public Map<Integer, Long> getErrorCounts(String server, int smb_level) {
+        Map<Integer, Long> result = new TreeMap<Integer, Long>();
+        LevelStats stats = peekStats(server, smb_level);
+        if (stats == null) return result;
+        for (int i = 0; i < MAX_ERROR_STATUSES; i++) {
+            int status = stats.errorStatuses.get(i);
+            long count = stats.errorCounts.get(i);
+            if (status != 0 && count > 0) result.put(status, count);
+        }
+        long other = stats.otherErrors.get();
+        if (other > 0) result.put(0, other);
+        return result;
+    }
+
+    private LevelStats peekStats(String server, int smb_level) {
+        if (smb_level < 0 || smb_level >= LEVEL_SLOTS) return null;
+        AtomicReferenceArray<LevelStats> levels = mServers.get(server == null ? NULL_SERVER : server);
+        return levels == null ? null : levels.get(smb_level);
+    }
+
+    /**
+     * Discard everything recorded. Operations running at the same time may be counted before or after the reset.
+     */
+    public void reset() {
+        mServers.clear();
+    }
+
+    /**
+     * @return One line per server, level and operation with count, errors, mean, p50, p99 and max in microseconds,
+     * followed by the bytes moved and the error statuses
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (String server : getServers()) {
+            for (int level = 0; level < LEVEL_SLOTS; level++) {
+                if (peekStats(server, level) == null) continue;
+                sb.append(String.format(Locale.US, "server=%s level=%d read=%d written=%d\n", server, level,
+                        getBytesRead(server, level), getBytesWritten(server, level)));
+                for (int op = 0; op < OPERATION_COUNT; op++) {
+                    JcifsOperationStats s = getOperationStats(server, level, op);
+                    if (s == null) continue;
+                    sb.append(String.format(Locale.US, "  %-16s count=%d errors=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus\n",
+                            getOperationName(op), s.getCount(), s.getErrorCount(), s.getMeanNanos() / 1000.0d,
+                            s.getPercentileNanos(50) / 1000.0d, s.getPercentileNanos(99) / 1000.0d, s.getMaxNanos() / 1000.0d));
+                }
+                for (Map.Entry<Integer, Long> e : getErrorCounts(server, level).entrySet()) {
+                    sb.append(String.format(Locale.US, "  status=0x%08X errors=%d\n", e.getKey(), e.getValue()));
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
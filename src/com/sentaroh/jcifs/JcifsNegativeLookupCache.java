@@ -0,0 +1,150 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in cache of paths that were found not to exist, set to a JcifsAuth by {@link JcifsAuth#setNegativeLookupCache}.
+ * While an entry is younger than the TTL, exists() of the path and of any path below it returns false without
+ * a request to the server. The least recently used entry is evicted when the cache is full.
+ * <p>
+ * Creating the path through a JcifsFile of the same JcifsAuth (createNew, mkdir, mkdirs, getOutputStream,
+ * renameTo, copyTo, upload) removes the entry. Paths created by other clients are seen only after the TTL expired,
+ * so the TTL should be short.
+ */
+public class JcifsNegativeLookupCache {
+    final static public long DEFAULT_TTL = 2000L;
+    final static public int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final long mTtl;
+    private final int mMaxEntries;
+
+    private final LinkedHashMap<String, Long> mEntries;
+
+    private final AtomicLong mHitCount = new AtomicLong(0);
+    private final AtomicLong mMissCount = new AtomicLong(0);
+
+    public JcifsNegativeLookupCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttl         Time in milliseconds a missing path is remembered
+     * @param max_entries Maximum number of paths kept
+     */
+    public JcifsNegativeLookupCache(long ttl, int max_entries) {
+        if (ttl <= 0) throw new IllegalArgumentException("ttl must be greater than 0.");
+        if (max_entries <= 0) throw new IllegalArgumentException("max_entries must be greater than 0.");
+        mTtl = ttl;
+        mMaxEntries = max_entries;
+        mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > mMaxEntries;
+            }
+        };
+    }
+
+    public long getTtl() {
+        return mTtl;
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    /**
+     * @return Number of exists() answered by the cache
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * @return Number of exists() that were not in the cache and were sent to the server
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public void resetStatistics() {
+        mHitCount.set(0);
+        mMissCount.set(0);
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * @return true if key or one of its parents is known not to exist, the hit or miss is counted
+     */
+    boolean isMissing(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            String path = key;
+            while (true) {
+                Long expire_time = mEntries.get(path);
+                if (expire_time != null) {
+                    if (expire_time - now > 0) {
+                        mHitCount.incrementAndGet();
+                        return true;
+                    }
+                    mEntries.remove(path);
+                }
+                int pos = path.lastIndexOf('/');
+                if (pos <= "smb://".length()) break;
+                path = path.substring(0, pos);
+            }
+        }
+        mMissCount.incrementAndGet();
+        return false;
+    }
+
+    synchronized void putMissing(String key) {
+        mEntries.put(key, System.currentTimeMillis() + mTtl);
+    }
+
+    /**
+     * Remove key and its parents, a path that exists implies its parents exist.
+     */
+    synchronized void remove(String key) {
+        String path = key;
+        while (true) {
+            mEntries.remove(path);
+            int pos = path.lastIndexOf('/');
+            if (pos <= "smb://".length()) break;
+            path = path.substring(0, pos);
+        }
+    }
+}
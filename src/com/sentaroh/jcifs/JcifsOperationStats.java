@@ -0,0 +1,97 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+/**
+ * Snapshot of one operation of {@link JcifsMetricsRecorder}. Percentiles are estimated from the histogram and
+ * reported as the upper bound of the bucket, at most 25% above the actual time.
+ */
+public class JcifsOperationStats {
+    private final int mOperation;
+    private final long mCount;
+    private final long mErrorCount;
+    private final long mTotalNanos;
+    private final long mMaxNanos;
+    private final long[] mBuckets;
+
+    JcifsOperationStats(int operation, long count, long error_count, long total_nanos, long max_nanos, long[] buckets) {
+        mOperation = operation;
+        mCount = count;
+        mErrorCount = error_count;
+        mTotalNanos = total_nanos;
+        mMaxNanos = max_nanos;
+        mBuckets = buckets;
+    }
+
+    /**
+     * @return JcifsMetrics.OP_xxx
+     */
+    public int getOperation() {
+        return mOperation;
+    }
+
+    /**
+     * @return Number of calls including the failed ones
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    public long getMeanNanos() {
+        return mCount == 0 ? 0 : mTotalNanos / mCount;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return Time in nanoseconds that the percentile of the calls did not exceed
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = 0;
+        for (long b : mBuckets) total += b;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100.0d * total);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < mBuckets.length; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                long upper = i + 1 < mBuckets.length ? JcifsMetricsRecorder.bucketLowerBound(i + 1) - 1 : mMaxNanos;
+                return Math.min(upper, mMaxNanos);
+            }
+        }
+        return mMaxNanos;
+    }
+}
@@ -0,0 +1,261 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits a file into ranges and transfers them from several threads.
+ * Each thread opens its own JcifsRandomAccessFile and uses positional I/O on the local FileChannel.
+ */
+class JcifsParallelTransfer {
+    private static final Logger log = LoggerFactory.getLogger(JcifsParallelTransfer.class);
+
+    final static private int IO_BUFFER_SIZE = 1024 * 1024;
+    final static private long RETRY_WAIT_MS = 500;
+
+    private final JcifsFile mRemote;
+    private final JcifsTransferOptions mOptions;
+
+    private boolean mUpload = false;
+    private long mTotalBytes = 0;
+    private final AtomicLong mNextOffset = new AtomicLong(0);
+    private final AtomicLong mTransferredBytes = new AtomicLong(0);
+    private final AtomicLong mCompletedBytes = new AtomicLong(0);
+    private final AtomicReference<JcifsException> mError = new AtomicReference<JcifsException>();
+
+    JcifsParallelTransfer(JcifsFile remote, JcifsTransferOptions options) {
+        mRemote = remote;
+        mOptions = options;
+    }
+
+    void download(Path local) throws JcifsException {
+        mTotalBytes = mRemote.length();
+        FileChannel fc = null;
+        try {
+            fc = FileChannel.open(local, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            runWorkers(fc);
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } finally {
+            if (fc != null) {
+                try {
+                    fc.close();
+                } catch (IOException e) {
+                    log.error("download close IOException", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The remote file is pre-sized to the local size before the ranges are written, so every range is
+     * written inside the file. The last modified time is set only after every range is written, an incomplete
+     * remote file keeps the time of the upload so a later sync does not take it as up to date.
+     */
+    void upload(Path local) throws JcifsException {
+        mUpload = true;
+        FileChannel fc = null;
+        try {
+            fc = FileChannel.open(local, StandardOpenOption.READ);
+            mTotalBytes = fc.size();
+            long last_modified = Files.getLastModifiedTime(local).toMillis();
+
+            JcifsRandomAccessFile raf = new JcifsRandomAccessFile(mRemote, "rw");
+            try {
+                raf.setLength(mTotalBytes);
+            } finally {
+                raf.close();
+            }
+            runWorkers(fc);
+            mRemote.setLastModified(last_modified);
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } finally {
+            if (fc != null) {
+                try {
+                    fc.close();
+                } catch (IOException e) {
+                    log.error("upload close IOException", e);
+                }
+            }
+        }
+    }
+
+    private void runWorkers(FileChannel fc) throws JcifsException {
+        long chunk_count = (mTotalBytes + mOptions.getChunkSize() - 1) / mOptions.getChunkSize();
+        int thread_count = (int) Math.max(1, Math.min(mOptions.getParallelism(), chunk_count));
+        ExecutorService pool = Executors.newFixedThreadPool(thread_count, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread th = new Thread(r, "JcifsParallelTransfer-" + mCount.incrementAndGet());
+                th.setDaemon(true);
+                return th;
+            }
+        });
+        try {
+            for (int i = 0; i < thread_count; i++) pool.execute(new RangeWorker(fc));
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) ;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mError.compareAndSet(null, new JcifsException("Transfer was interrupted."));
+            pool.shutdownNow();
+        }
+        JcifsException error = mError.get();
+        if (error != null) throw error;
+        if (mCompletedBytes.get() != mTotalBytes) {
+            throw (new JcifsException("Transfer is incomplete, " + mCompletedBytes.get() + " of " + mTotalBytes +
+                    " bytes, " + mRemote.getPath()));
+        }
+    }
+
+    private void notifyProgress(long transferred) {
+        JcifsTransferListener listener = mOptions.getListener();
+        if (listener != null) listener.onProgress(transferred, mTotalBytes);
+    }
+
+    private class RangeWorker implements Runnable {
+        private final FileChannel mLocal;
+        private final byte[] mBuffer = new byte[Math.min(IO_BUFFER_SIZE, mOptions.getChunkSize())];
+        private JcifsRandomAccessFile mRaf = null;
+        private long mRangeDone = 0;
+
+        RangeWorker(FileChannel local) {
+            mLocal = local;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (mError.get() == null) {
+                    long offset = mNextOffset.getAndAdd(mOptions.getChunkSize());
+                    if (offset >= mTotalBytes) break;
+                    long length = Math.min(mOptions.getChunkSize(), mTotalBytes - offset);
+                    if (!transferRangeWithRetry(offset, length)) break;
+                    mCompletedBytes.addAndGet(length);
+                }
+            } catch (Throwable e) {
+                // A throwing listener or an unchecked exception of jcifs must fail the transfer, not leave a hole
+                mError.compareAndSet(null, new JcifsException(e, 0, e.getCause()));
+            } finally {
+                closeRaf();
+            }
+        }
+
+        private boolean transferRangeWithRetry(long offset, long length) {
+            for (int retry = 0; ; retry++) {
+                JcifsException error = null;
+                mRangeDone = 0;
+                try {
+                    if (mRaf == null) mRaf = new JcifsRandomAccessFile(mRemote, mUpload ? "rw" : "r");
+                    if (mUpload) uploadRange(offset, length);
+                    else downloadRange(offset, length);
+                    return true;
+                } catch (JcifsException e) {
+                    error = e;
+                } catch (IOException e) {
+                    error = new JcifsException(e, 0, e.getCause());
+                }
+                notifyProgress(mTransferredBytes.addAndGet(-mRangeDone));
+                closeRaf();
+                if (retry >= mOptions.getRetryCount() || mError.get() != null) {
+                    mError.compareAndSet(null, error);
+                    return false;
+                }
+                log.warn("Range " + offset + " of " + mRemote.getPath() + " failed, retry=" + (retry + 1) + ", " + error.getMessage());
+                try {
+                    Thread.sleep(RETRY_WAIT_MS * (retry + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    mError.compareAndSet(null, new JcifsException("Transfer was interrupted."));
+                    return false;
+                }
+            }
+        }
+
+        private void downloadRange(long offset, long length) throws JcifsException, IOException {
+            mRaf.seek(offset);
+            long pos = offset;
+            long end = offset + length;
+            while (pos < end && mError.get() == null) {
+                int n = mRaf.readFully(mBuffer, 0, (int) Math.min(mBuffer.length, end - pos));
+                if (n <= 0) throw (new JcifsException("Unexpected end of file at " + pos + ", " + mRemote.getPath()));
+                ByteBuffer bb = ByteBuffer.wrap(mBuffer, 0, n);
+                long write_pos = pos;
+                while (bb.hasRemaining()) write_pos += mLocal.write(bb, write_pos);
+                pos += n;
+                mRangeDone += n;
+                notifyProgress(mTransferredBytes.addAndGet(n));
+            }
+        }
+
+        private void uploadRange(long offset, long length) throws JcifsException, IOException {
+            mRaf.seek(offset);
+            long pos = offset;
+            long end = offset + length;
+            while (pos < end && mError.get() == null) {
+                ByteBuffer bb = ByteBuffer.wrap(mBuffer, 0, (int) Math.min(mBuffer.length, end - pos));
+                long read_pos = pos;
+                while (bb.hasRemaining()) {
+                    int n = mLocal.read(bb, read_pos);
+                    if (n < 0) throw (new IOException("Unexpected end of local file at " + read_pos));
+                    read_pos += n;
+                }
+                int n = bb.position();
+                mRaf.write(mBuffer, 0, n);
+                pos += n;
+                mRangeDone += n;
+                notifyProgress(mTransferredBytes.addAndGet(n));
+            }
+        }
+
+        private void closeRaf() {
+            if (mRaf == null) return;
+            try {
+                mRaf.close();
+            } catch (JcifsException e) {
+                log.error("RangeWorker close JcifsException", e);
+            }
+            mRaf = null;
+        }
+    }
+}
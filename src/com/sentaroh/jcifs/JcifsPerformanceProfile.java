@@ -0,0 +1,102 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.Properties;
+
+/**
+ * Named transport tuning for JcifsAuth. Each profile maps to the jcifs properties of the selected SMB level,
+ * values that are not part of the profile stay at the library default.
+ * <p>
+ * LAN_BULK       Large socket buffers and read/write sizes for sequential transfer on a fast local network.<br>
+ * WAN_HIGH_LATENCY Many requests in flight and long timeouts, so a high round trip time does not stall or break the transfer.<br>
+ * METADATA_HEAVY Many small requests in flight, large directory listing buffers and a longer attribute cache
+ * for list and stat workloads.
+ */
+public enum JcifsPerformanceProfile {
+    LAN_BULK,
+    WAN_HIGH_LATENCY,
+    METADATA_HEAVY;
+
+    final static public String PROP_RCV_BUF_SIZE = "jcifs.smb.client.rcv_buf_size";
+    final static public String PROP_SND_BUF_SIZE = "jcifs.smb.client.snd_buf_size";
+    final static public String PROP_MAX_MPX_COUNT = "jcifs.smb.client.maxMpxCount";
+    final static public String PROP_TCP_NODELAY = "jcifs.smb.client.tcpNoDelay";
+    final static public String PROP_RESPONSE_TIMEOUT = "jcifs.smb.client.responseTimeout";
+    final static public String PROP_SO_TIMEOUT = "jcifs.smb.client.soTimeout";
+    final static public String PROP_CONN_TIMEOUT = "jcifs.smb.client.connTimeout";
+    final static public String PROP_ATTR_EXPIRATION_PERIOD = "jcifs.smb.client.attrExpirationPeriod";
+    final static public String PROP_LIST_SIZE = "jcifs.smb.client.listSize";
+    final static public String PROP_LIST_COUNT = "jcifs.smb.client.listCount";
+
+    /**
+     * jcifs-1.3.17 allocates its buffers from rcv_buf_size and does not support SMB1 large read/write,
+     * so the buffers are limited to the largest value that fits in a 16 bit SMB1 length field.
+     */
+    final static private int SMB1_MAX_BUF_SIZE = 60416;
+
+    /**
+     * @param smb_level JCIFS_FILE_SMB1 to JCIFS_FILE_SMB214
+     * @return The jcifs properties of this profile for smb_level, a new instance on each call
+     */
+    public Properties getProperties(int smb_level) {
+        boolean smb1 = smb_level == JcifsAuth.JCIFS_FILE_SMB1;
+        Properties prop = new Properties();
+        prop.setProperty(PROP_TCP_NODELAY, "true");
+        switch (this) {
+            case LAN_BULK:
+                setBufferSize(prop, smb1, 1024 * 1024);
+                prop.setProperty(PROP_MAX_MPX_COUNT, "16");
+                prop.setProperty(PROP_RESPONSE_TIMEOUT, "30000");
+                prop.setProperty(PROP_SO_TIMEOUT, "35000");
+                prop.setProperty(PROP_CONN_TIMEOUT, "10000");
+                break;
+            case WAN_HIGH_LATENCY:
+                setBufferSize(prop, smb1, 256 * 1024);
+                prop.setProperty(PROP_MAX_MPX_COUNT, "64");
+                prop.setProperty(PROP_RESPONSE_TIMEOUT, "120000");
+                prop.setProperty(PROP_SO_TIMEOUT, "180000");
+                prop.setProperty(PROP_CONN_TIMEOUT, "60000");
+                prop.setProperty(PROP_ATTR_EXPIRATION_PERIOD, "30000");
+                break;
+            case METADATA_HEAVY:
+                setBufferSize(prop, smb1, 64 * 1024);
+                prop.setProperty(PROP_MAX_MPX_COUNT, "64");
+                prop.setProperty(PROP_RESPONSE_TIMEOUT, "30000");
+                prop.setProperty(PROP_SO_TIMEOUT, "35000");
+                prop.setProperty(PROP_CONN_TIMEOUT, "10000");
+                prop.setProperty(PROP_ATTR_EXPIRATION_PERIOD, "60000");
+                prop.setProperty(PROP_LIST_SIZE, "65535");
+                prop.setProperty(PROP_LIST_COUNT, "1000");
+                break;
+        }
+        return prop;
+    }
+
+    private static void setBufferSize(Properties prop, boolean smb1, int size) {
+        if (smb1) size = Math.min(size, SMB1_MAX_BUF_SIZE);
+        prop.setProperty(PROP_RCV_BUF_SIZE, String.valueOf(size));
+        prop.setProperty(PROP_SND_BUF_SIZE, String.valueOf(size));
+    }
+}
@@ -0,0 +1,84 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+/**
+ * Random access to a remote file over the SmbRandomAccessFile of the SMB level, opened by the backend of the file.
+ * An instance keeps one open handle and a file pointer, it is not thread safe.
+ */
+class JcifsRandomAccessFile implements AutoCloseable {
+    private final JcifsFileBackend.RandomAccess mRaf;
+
+    /**
+     * @param file A remote file
+     * @param mode "r" or "rw"
+     * @throws JcifsException
+     */
+    JcifsRandomAccessFile(JcifsFile file, String mode) throws JcifsException {
+        mRaf = file.getBackend().openRandomAccess(mode);
+    }
+
+    int read(byte[] buf, int off, int len) throws JcifsException {
+        return mRaf.read(buf, off, len);
+    }
+
+    /**
+     * Read len bytes unless the end of file is reached.
+     *
+     * @return Number of bytes read, less than len only at the end of file
+     */
+    int readFully(byte[] buf, int off, int len) throws JcifsException {
+        int total = 0;
+        while (total < len) {
+            int n = read(buf, off + total, len - total);
+            if (n <= 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    void write(byte[] buf, int off, int len) throws JcifsException {
+        mRaf.write(buf, off, len);
+    }
+
+    void seek(long pos) throws JcifsException {
+        mRaf.seek(pos);
+    }
+
+    long getFilePointer() throws JcifsException {
+        return mRaf.getFilePointer();
+    }
+
+    long length() throws JcifsException {
+        return mRaf.length();
+    }
+
+    void setLength(long new_length) throws JcifsException {
+        mRaf.setLength(new_length);
+    }
+
+    public void close() throws JcifsException {
+        mRaf.close();
+    }
+}
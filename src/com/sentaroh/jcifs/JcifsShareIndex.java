@@ -0,0 +1,471 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Snapshot of a remote directory tree: relative path, size, last modified time and attributes of every entry.
+ * The snapshot is stored in a compact binary file that is memory mapped when opened, entries are sorted
+ * by path and looked up by binary search without loading the file.
+ * <p>
+ * A scan with a previous index lists only the directories whose last modified time changed since the previous scan,
+ * the entries of the other directories are taken from the previous index and only their subdirectories are queried.
+ * Servers update the last modified time of a directory when an entry is created, deleted or renamed in it,
+ * but not when an existing file is rewritten in place, such a change is found only in a listed directory.
+ * <p>
+ * File layout, big endian: magic "JSIX", version, scan time, root path, entry count, offset of each record,
+ * then the records (path length, UTF-8 path, size, last modified time, attributes).
+ */
+public class JcifsShareIndex {
+    final static private int MAGIC = 0x4A534958;
+    final static private int VERSION = 1;
+    final static private Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final String mRootPath;
+    private final long mScanTime;
+    private final int mCount;
+    private final int mOffsetTablePos;
+
+    private int mListedDirectoryCount = 0;
+    private int mReusedDirectoryCount = 0;
+
+    /**
+     * One entry of the index. The path is relative to the root and uses "/" as separator, the root itself is "".
+     */
+    public static class Entry {
+        private final String mPath;
+        private final JcifsFileAttributes mAttributes;
+
+        Entry(String path, JcifsFileAttributes attributes) {
+            mPath = path;
+            mAttributes = attributes;
+        }
+
+        public String getPath() {
+            return mPath;
+        }
+
+        public JcifsFileAttributes getFileAttributes() {
+            return mAttributes;
+        }
+
+        public long length() {
+            return mAttributes.length();
+        }
+
+        public long getLastModified() {
+            return mAttributes.getLastModified();
+        }
+
+        public int getAttributes() {
+            return mAttributes.getAttributes();
+        }
+
+        public boolean isDirectory() {
+            return mAttributes.isDirectory();
+        }
+
+        boolean isSame(Entry e) {
+            return length() == e.length() && getLastModified() == e.getLastModified() && getAttributes() == e.getAttributes();
+        }
+    }
+
+    private JcifsShareIndex(ByteBuffer buffer) throws JcifsException {
+        mBuffer = buffer;
+        if (buffer.remaining() < 8 || buffer.getInt(0) != MAGIC) throw new JcifsException("Not a share index file.");
+        if (buffer.getInt(4) != VERSION) throw new JcifsException("Unsupported share index version. version=" + buffer.getInt(4));
+        mScanTime = buffer.getLong(8);
+        int root_len = buffer.getInt(16);
+        mRootPath = readString(20, root_len);
+        mCount = buffer.getInt(20 + root_len);
+        mOffsetTablePos = 24 + root_len;
+    }
+
+    /**
+     * Open an index file, the file is memory mapped.
+     *
+     * @param file Index file written by scan()
+     * @throws JcifsException
+     */
+    public static JcifsShareIndex open(Path file) throws JcifsException {
+        FileChannel fc = null;
+        try {
+            fc = FileChannel.open(file, StandardOpenOption.READ);
+            MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            return new JcifsShareIndex(mbb);
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } finally {
+            if (fc != null) {
+                try {
+                    fc.close();
+                } catch (IOException e) {
+                    // The mapping stays valid after the channel is closed
+                }
+            }
+        }
+    }
+
+    /**
+     * Scan the whole tree and write a new index.
+     *
+     * @param root Remote directory
+     * @param file Index file to be written, replaced if it exists
+     * @throws JcifsException
+     */
+    public static JcifsShareIndex scan(JcifsFile root, Path file) throws JcifsException {
+        return scan(root, file, null, null);
+    }
+
+    /**
+     * Scan the tree and write a new index, directories not changed since previous are not listed.
+     *
+     * @param root     Remote directory
+     * @param file     Index file to be written, replaced if it exists. It may be the file of previous.
+     * @param previous Index of the previous scan of the same root, null is scan the whole tree
+     * @param options  Parallelism of the scan and the number of directory listings in flight on the server,
+     *                 null is use default. The depth limit is not used.
+     * @throws JcifsException
+     */
+    public static JcifsShareIndex scan(JcifsFile root, Path file, JcifsShareIndex previous, JcifsWalkOptions options) throws JcifsException {
+        if (!root.isDirectory()) throw new JcifsException("Root is not a directory. path=" + root.getPath());
+        if (previous != null && !previous.getRootPath().equals(root.getPath())) previous = null;
+        Scanner scanner = new Scanner(previous, options == null ? new JcifsWalkOptions() : options);
+        ArrayList<Entry> entries = scanner.scan(root);
+
+        Path tmp = file.resolveSibling(file.getFileName().toString() + ".tmp");
+        write(tmp, root.getPath(), System.currentTimeMillis(), entries);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+        JcifsShareIndex index = open(file);
+        index.mListedDirectoryCount = scanner.mListedCount.get();
+        index.mReusedDirectoryCount = scanner.mReusedCount.get();
+        return index;
+    }
+
+    public String getRootPath() {
+        return mRootPath;
+    }
+
+    /**
+     * @return Time the index was written, in milliseconds
+     */
+    public long getScanTime() {
+        return mScanTime;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return Number of directories listed by the scan that created this index, 0 for an index from open()
+     */
+    public int getListedDirectoryCount() {
+        return mListedDirectoryCount;
+    }
+
+    /**
+     * @return Number of directories taken from the previous index by the scan that created this index
+     */
+    public int getReusedDirectoryCount() {
+        return mReusedDirectoryCount;
+    }
+
+    /**
+     * @param i 0 to size()-1, entries are sorted by path
+     */
+    public Entry get(int i) {
+        if (i < 0 || i >= mCount) throw new IndexOutOfBoundsException("index=" + i + ", size=" + mCount);
+        int pos = mBuffer.getInt(mOffsetTablePos + i * 4);
+        int path_len = mBuffer.getInt(pos);
+        String path = readString(pos + 4, path_len);
+        pos += 4 + path_len;
+        return new Entry(path, new JcifsFileAttributes(mBuffer.getInt(pos + 16), mBuffer.getLong(pos), mBuffer.getLong(pos + 8)));
+    }
+
+    /**
+     * @param path Relative path, "" is the root
+     * @return The entry, null if the path is not in the index
+     */
+    public Entry find(String path) {
+        int i = lowerBound(path);
+        if (i < mCount) {
+            Entry e = get(i);
+            if (e.getPath().equals(path)) return e;
+        }
+        return null;
+    }
+
+    /**
+     * Report the differences from this index to newer.
+     *
+     * @param newer    A later index of the same root
+     * @param listener Receives added, removed and modified entries in path order
+     * @throws JcifsException
+     */
+    public void diff(JcifsShareIndex newer, JcifsShareIndexListener listener) throws JcifsException {
+        int i = 0, j = 0;
+        Entry old_entry = i < mCount ? get(i) : null;
+        Entry new_entry = j < newer.mCount ? newer.get(j) : null;
+        while (old_entry != null || new_entry != null) {
+            int cmp = old_entry == null ? 1 : new_entry == null ? -1 : old_entry.getPath().compareTo(new_entry.getPath());
+            if (cmp < 0) {
+                listener.onRemoved(old_entry);
+                old_entry = ++i < mCount ? get(i) : null;
+            } else if (cmp > 0) {
+                listener.onAdded(new_entry);
+                new_entry = ++j < newer.mCount ? newer.get(j) : null;
+            } else {
+                if (!old_entry.isSame(new_entry)) listener.onModified(old_entry, new_entry);
+                old_entry = ++i < mCount ? get(i) : null;
+                new_entry = ++j < newer.mCount ? newer.get(j) : null;
+            }
+        }
+    }
+
+    /**
+     * @return Index of the first entry with a path equal to or greater than path
+     */
+    private int lowerBound(String path) {
+        int low = 0, high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid).getPath().compareTo(path) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return Direct children of the directory path, the subtree of each subdirectory is skipped by a binary search
+     */
+    ArrayList<Entry> getChildren(String path) {
+        ArrayList<Entry> result = new ArrayList<Entry>();
+        String prefix = path.length() == 0 ? "" : path + "/";
+        int i = lowerBound(prefix);
+        while (i < mCount) {
+            Entry e = get(i);
+            String child_path = e.getPath();
+            if (!child_path.startsWith(prefix)) break;
+            int slash = child_path.indexOf('/', prefix.length());
+            if (slash >= 0) {
+                // All paths below child_path/ sort before child_path/ followed by the greatest char
+                i = lowerBound(child_path.substring(0, slash + 1) + '\uffff');
+                continue;
+            }
+            if (child_path.length() > prefix.length()) result.add(e);
+            i++;
+        }
+        return result;
+    }
+
+    private String readString(int pos, int len) {
+        byte[] bytes = new byte[len];
+        ByteBuffer bb = mBuffer.duplicate();
+        bb.position(pos);
+        bb.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void write(Path file, String root_path, long scan_time, ArrayList<Entry> entries) throws JcifsException {
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                return e1.getPath().compareTo(e2.getPath());
+            }
+        });
+        byte[] root_bytes = root_path.getBytes(UTF8);
+        byte[][] path_bytes = new byte[entries.size()][];
+        for (int i = 0; i < path_bytes.length; i++) path_bytes[i] = entries.get(i).getPath().getBytes(UTF8);
+
+        OutputStream os = null;
+        try {
+            os = Files.newOutputStream(file);
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(scan_time);
+            dos.writeInt(root_bytes.length);
+            dos.write(root_bytes);
+            dos.writeInt(entries.size());
+            long pos = 24L + root_bytes.length + 4L * entries.size();
+            for (byte[] bytes : path_bytes) {
+                if (pos > Integer.MAX_VALUE) throw new JcifsException("Share index exceeds 2GB.");
+                dos.writeInt((int) pos);
+                pos += 4 + bytes.length + 20;
+            }
+            for (int i = 0; i < path_bytes.length; i++) {
+                Entry e = entries.get(i);
+                dos.writeInt(path_bytes[i].length);
+                dos.write(path_bytes[i]);
+                dos.writeLong(e.length());
+                dos.writeLong(e.getLastModified());
+                dos.writeInt(e.getAttributes());
+            }
+            dos.flush();
+            os.close();
+            os = null;
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } finally {
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // The write already failed
+                }
+            }
+        }
+    }
+
+    private static class Scanner {
+        private final JcifsShareIndex mPrevious;
+        private final JcifsWalkOptions mOptions;
+        private final ConcurrentLinkedQueue<Entry> mEntries = new ConcurrentLinkedQueue<Entry>();
+        private final AtomicReference<JcifsException> mAbortCause = new AtomicReference<JcifsException>();
+        private final AtomicInteger mListedCount = new AtomicInteger(0);
+        private final AtomicInteger mReusedCount = new AtomicInteger(0);
+        private final Semaphore mListingPermit;
+
+        Scanner(JcifsShareIndex previous, JcifsWalkOptions options) {
+            mPrevious = previous;
+            mOptions = options;
+            // The tree is on one server, so one permit set applies the per server limit of the options
+            mListingPermit = new Semaphore(options.getMaxListingsPerServer());
+        }
+
+        ArrayList<Entry> scan(JcifsFile root) throws JcifsException {
+            JcifsFileAttributes root_attr = root.loadAttributes();
+            if (root_attr == null) throw new JcifsException("Root does not exist. path=" + root.getPath());
+            Entry root_entry = new Entry("", new JcifsFileAttributes(root_attr.getAttributes(), 0, root_attr.getLastModified()));
+            mEntries.add(root_entry);
+            ForkJoinPool pool = new ForkJoinPool(mOptions.getParallelism());
+            try {
+                pool.invoke(new ScanTask(root, root_entry));
+            } finally {
+                pool.shutdown();
+            }
+            JcifsException cause = mAbortCause.get();
+            if (cause != null) throw cause;
+            return new ArrayList<Entry>(mEntries);
+        }
+
+        private JcifsFile[] listDirectory(JcifsFile dir) throws JcifsException {
+            try {
+                mListingPermit.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JcifsException("Scan was interrupted.");
+            }
+            try {
+                return dir.listFiles();
+            } finally {
+                mListingPermit.release();
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private class ScanTask extends RecursiveAction {
+            private final JcifsFile mDir;
+            private final Entry mDirEntry;
+
+            ScanTask(JcifsFile dir, Entry dir_entry) {
+                mDir = dir;
+                mDirEntry = dir_entry;
+            }
+
+            @Override
+            protected void compute() {
+                if (mAbortCause.get() != null) return;
+                try {
+                    ArrayList<ScanTask> sub_tasks = new ArrayList<ScanTask>();
+                    String prefix = mDirEntry.getPath().length() == 0 ? "" : mDirEntry.getPath() + "/";
+                    Entry prev = mPrevious == null ? null : mPrevious.find(mDirEntry.getPath());
+                    if (prev != null && prev.isDirectory() && prev.getLastModified() == mDirEntry.getLastModified()) {
+                        mReusedCount.incrementAndGet();
+                        String dir_path = mDir.getPath().endsWith("/") ? mDir.getPath() : mDir.getPath() + "/";
+                        for (Entry child : mPrevious.getChildren(mDirEntry.getPath())) {
+                            if (!child.isDirectory()) {
+                                mEntries.add(child);
+                                continue;
+                            }
+                            JcifsFile child_dir = new JcifsFile(dir_path + child.getPath().substring(prefix.length()) + "/", mDir.getAuth());
+                            JcifsFileAttributes attr = child_dir.loadAttributes();
+                            if (attr == null) continue;
+                            Entry child_entry = new Entry(child.getPath(), new JcifsFileAttributes(attr.getAttributes(), 0, attr.getLastModified()));
+                            mEntries.add(child_entry);
+                            sub_tasks.add(new ScanTask(child_dir, child_entry));
+                        }
+                    } else {
+                        mListedCount.incrementAndGet();
+                        JcifsFile[] children = listDirectory(mDir);
+                        if (children != null) {
+                            for (JcifsFile child : children) {
+                                String name = child.getName();
+                                if (name.endsWith("/")) name = name.substring(0, name.length() - 1);
+                                boolean directory = child.isDirectory();
+                                Entry child_entry = new Entry(prefix + name,
+                                        new JcifsFileAttributes(child.getAttributes(), directory ? 0 : child.length(), child.getLastModified()));
+                                mEntries.add(child_entry);
+                                if (directory) sub_tasks.add(new ScanTask(child, child_entry));
+                            }
+                        }
+                    }
+                    if (sub_tasks.size() > 0) invokeAll(sub_tasks);
+                } catch (JcifsException e) {
+                    mAbortCause.compareAndSet(null, e);
+                } catch (MalformedURLException e) {
+                    mAbortCause.compareAndSet(null, new JcifsException(e, 0, e.getCause()));
+                }
+            }
+        }
+    }
+}
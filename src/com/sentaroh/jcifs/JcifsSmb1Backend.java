@@ -0,0 +1,514 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backend of JCIFS 1.3.17 (SMB1).
+ */
+final class JcifsSmb1Backend implements JcifsFileBackend {
+
+    final static private int SMB1_DEFAULT_RCV_BUF_SIZE = 60416;
+    final static private int SMB1_DEFAULT_SND_BUF_SIZE = 16644;
+    final static private int SMB1_HEADER_RESERVE = 64;
+    final static private int ENUMERATION_QUEUE_SIZE = 256;
+    final static private long ENUMERATION_QUEUE_WAIT_MS = 100;
+
+    private final jcifs.smb.SmbFile mFile;
+
+    JcifsSmb1Backend(jcifs.smb.SmbFile file) {
+        mFile = file;
+    }
+
+    jcifs.smb.SmbFile getSmbFile() {
+        return mFile;
+    }
+
+    @Override
+    public int getSmbLevel() {
+        return JcifsAuth.JCIFS_FILE_SMB1;
+    }
+
+    @Override
+    public boolean exists() throws JcifsException {
+        try {
+            return mFile.exists();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public void delete() throws JcifsException {
+        try {
+            mFile.delete();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public void mkdir() throws JcifsException {
+        try {
+            mFile.mkdir();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public void mkdirs() throws JcifsException {
+        try {
+            mFile.mkdirs();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public int getAttributes() throws JcifsException {
+        try {
+            return mFile.getAttributes();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws JcifsException {
+        try {
+            return mFile.getInputStream();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws JcifsException {
+        try {
+            return mFile.getOutputStream();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public int getReadBufferSize() {
+        return jcifs.Config.getInt("jcifs.smb.client.rcv_buf_size", SMB1_DEFAULT_RCV_BUF_SIZE) - SMB1_HEADER_RESERVE;
+    }
+
+    @Override
+    public int getWriteBufferSize() {
+        return jcifs.Config.getInt("jcifs.smb.client.snd_buf_size", SMB1_DEFAULT_SND_BUF_SIZE) - SMB1_HEADER_RESERVE;
+    }
+
+    @Override
+    public void close() throws JcifsException {
+        //Nop for JCIFS(SMB1)
+    }
+
+    @Override
+    public void connect() throws JcifsException {
+        try {
+            mFile.connect();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public void createNewFile() throws JcifsException {
+        try {
+            mFile.createNewFile();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public String getName() {
+        return mFile.getName();
+    }
+
+    @Override
+    public String getPath() {
+        return mFile.getPath();
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return mFile.getCanonicalPath();
+    }
+
+    @Override
+    public String getServer() {
+        return mFile.getServer();
+    }
+
+    @Override
+    public String getShare() {
+        return mFile.getShare();
+    }
+
+    @Override
+    public int getType() throws JcifsException {
+        try {
+            return mFile.getType();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public String getUncPath() {
+        return mFile.getUncPath();
+    }
+
+    @Override
+    public String getParent() {
+        return mFile.getParent();
+    }
+
+    @Override
+    public boolean canRead() throws JcifsException {
+        try {
+            return mFile.canRead();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean canWrite() throws JcifsException {
+        try {
+            return mFile.canWrite();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean isDirectory() throws JcifsException {
+        try {
+            return mFile.isDirectory();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean isFile() throws JcifsException {
+        try {
+            return mFile.isFile();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean isHidden() throws JcifsException {
+        try {
+            return mFile.isHidden();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public long length() throws JcifsException {
+        try {
+            return mFile.length();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public String[] list() throws JcifsException {
+        try {
+            return mFile.list();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public JcifsFile[] listFiles(JcifsAuth auth) throws JcifsException {
+        try {
+            // The SmbFile of each entry keeps the attributes of the enumeration response
+            jcifs.smb.SmbFile[] files = mFile.listFiles();
+            if (files == null) return null;
+            JcifsFile[] result = new JcifsFile[files.length];
+            for (int i = 0; i < files.length; i++) result[i] = new JcifsFile(files[i], auth);
+            return result;
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public void renameTo(JcifsFile d) throws JcifsException {
+        if (d.getSmb1File() == null) throw new JcifsException("Null SMB1 file specified.");
+        try {
+            mFile.renameTo(d.getSmb1File());
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean isServerSideCopySupported() {
+        return false;
+    }
+
+    @Override
+    public void copyTo(JcifsFile d) throws JcifsException {
+        throw (new JcifsException("Server side copy is not supported by SMB1"));
+    }
+
+    @Override
+    public void setLastModified(long lm) throws JcifsException {
+        try {
+            mFile.setLastModified(lm);
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public long lastModified() throws JcifsException {
+        try {
+            return mFile.lastModified();
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public JcifsFileAttributes readAttributes() throws JcifsException {
+        try {
+            return JcifsFileAttributes.fromSmbFile(mFile);
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public JcifsFileAttributes loadAttributes() throws JcifsException {
+        // exists() keeps attributes and times of its query in the SmbFile, length() queries the size
+        return exists() ? readAttributes() : null;
+    }
+
+    /**
+     * jcifs-1.3.17 keeps the open handle in the SmbFile, the handle is opened on an own SmbFile of the same path
+     */
+    @Override
+    public RandomAccess openRandomAccess(String mode) throws JcifsException {
+        try {
+            jcifs.smb.SmbFile file = new jcifs.smb.SmbFile(mFile.getPath(), (jcifs.smb.NtlmPasswordAuthentication) mFile.getPrincipal());
+            return new RandomAccessHandle(new jcifs.smb.SmbRandomAccessFile(file, mode));
+        } catch (jcifs.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        } catch (MalformedURLException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } catch (UnknownHostException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public Children children(JcifsAuth auth) {
+        return new ChildEnumeration(mFile, auth);
+    }
+
+    @Override
+    public Watch watch(int filter, boolean recursive) throws JcifsException {
+        throw (new JcifsException("Change notification is not supported by SMB1."));
+    }
+
+    private static final class RandomAccessHandle implements RandomAccess {
+        private final jcifs.smb.SmbRandomAccessFile mRaf;
+
+        RandomAccessHandle(jcifs.smb.SmbRandomAccessFile raf) {
+            mRaf = raf;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws JcifsException {
+            try {
+                return mRaf.read(buf, off, len);
+            } catch (jcifs.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws JcifsException {
+            try {
+                mRaf.write(buf, off, len);
+            } catch (jcifs.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public void seek(long pos) throws JcifsException {
+            try {
+                mRaf.seek(pos);
+            } catch (jcifs.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public long getFilePointer() throws JcifsException {
+            try {
+                return mRaf.getFilePointer();
+            } catch (jcifs.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public long length() throws JcifsException {
+            try {
+                return mRaf.length();
+            } catch (jcifs.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public void setLength(long new_length) throws JcifsException {
+            try {
+                mRaf.setLength(new_length);
+            } catch (jcifs.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public void close() throws JcifsException {
+            try {
+                mRaf.close();
+            } catch (jcifs.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+    }
+
+    /**
+     * jcifs-1.3.17 has no enumeration iterator. listFiles() runs on a separate thread and the filter callback
+     * hands each entry over through a bounded queue, the filter rejects every entry so no array is built.
+     * After close() the rest of the enumeration is discarded, it is not aborted because jcifs-1.3.17
+     * sends FIND_CLOSE2 only when the enumeration completes, an aborted search would leave its handle open on the server.
+     */
+    private static final class ChildEnumeration implements Children {
+        private static final Object END_OF_LIST = new Object();
+
+        private final ArrayBlockingQueue<Object> mQueue = new ArrayBlockingQueue<Object>(ENUMERATION_QUEUE_SIZE);
+        private final JcifsAuth mAuth;
+        private volatile jcifs.smb.SmbException mError = null;
+        private volatile boolean mClosed = false;
+
+        ChildEnumeration(final jcifs.smb.SmbFile dir, JcifsAuth auth) {
+            mAuth = auth;
+            Thread th = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        dir.listFiles(new jcifs.smb.SmbFileFilter() {
+                            @Override
+                            public boolean accept(jcifs.smb.SmbFile file) throws jcifs.smb.SmbException {
+                                if (mClosed) return false;
+                                enqueue(file);
+                                return false;
+                            }
+                        });
+                    } catch (jcifs.smb.SmbException e) {
+                        mError = e;
+                    } finally {
+                        enqueue(END_OF_LIST);
+                    }
+                }
+            });
+            th.setName("JcifsFileIterator");
+            th.setDaemon(true);
+            th.start();
+        }
+
+        private void enqueue(Object o) {
+            try {
+                while (!mClosed) {
+                    if (mQueue.offer(o, ENUMERATION_QUEUE_WAIT_MS, TimeUnit.MILLISECONDS)) return;
+                }
+            } catch (InterruptedException e) {
+                mClosed = true;
+            }
+        }
+
+        @Override
+        public JcifsFile next() throws JcifsException {
+            if (mClosed) return null;
+            Object o;
+            try {
+                o = mQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (new JcifsException("Directory enumeration was interrupted."));
+            }
+            if (mClosed) return null;
+            if (o == END_OF_LIST) {
+                mClosed = true;
+                jcifs.smb.SmbException error = mError;
+                if (error != null) throw (new JcifsException(error, error.getNtStatus(), error.getCause()));
+                return null;
+            }
+            return new JcifsFile((jcifs.smb.SmbFile) o, mAuth);
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+            mQueue.clear();
+            // Wake a thread waiting in next(), the enumeration thread stops queueing once closed
+            mQueue.offer(END_OF_LIST);
+        }
+    }
+
+}
@@ -0,0 +1,504 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Backend of jcifs-ng 2.1.1 (SMB211).
+ */
+final class JcifsSmb211Backend implements JcifsFileBackend {
+
+    private final jcifsng211.smb.SmbFile mFile;
+
+    JcifsSmb211Backend(jcifsng211.smb.SmbFile file) {
+        mFile = file;
+    }
+
+    jcifsng211.smb.SmbFile getSmbFile() {
+        return mFile;
+    }
+
+    @Override
+    public int getSmbLevel() {
+        return JcifsAuth.JCIFS_FILE_SMB211;
+    }
+
+    @Override
+    public boolean exists() throws JcifsException {
+        try {
+            return mFile.exists();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public void delete() throws JcifsException {
+        try {
+            mFile.delete();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public void mkdir() throws JcifsException {
+        try {
+            mFile.mkdir();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public void mkdirs() throws JcifsException {
+        try {
+            mFile.mkdirs();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public int getAttributes() throws JcifsException {
+        try {
+            return mFile.getAttributes();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws JcifsException {
+        try {
+            return mFile.getInputStream();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws JcifsException {
+        try {
+            return mFile.getOutputStream();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public int getReadBufferSize() throws JcifsException {
+        try {
+            jcifsng211.SmbTreeHandle th = mFile.getTreeHandle();
+            try {
+                if (th instanceof jcifsng211.smb.SmbTreeHandleInternal) return ((jcifsng211.smb.SmbTreeHandleInternal) th).getReceiveBufferSize();
+            } finally {
+                th.close();
+            }
+            return JcifsFile.DEFAULT_TRANSFER_BUFFER_SIZE;
+        } catch (jcifsng211.CIFSException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public int getWriteBufferSize() throws JcifsException {
+        try {
+            jcifsng211.SmbTreeHandle th = mFile.getTreeHandle();
+            try {
+                if (th instanceof jcifsng211.smb.SmbTreeHandleInternal) return ((jcifsng211.smb.SmbTreeHandleInternal) th).getSendBufferSize();
+            } finally {
+                th.close();
+            }
+            return JcifsFile.DEFAULT_TRANSFER_BUFFER_SIZE;
+        } catch (jcifsng211.CIFSException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public void close() throws JcifsException {
+        mFile.close();
+    }
+
+    @Override
+    public void connect() throws JcifsException {
+        try {
+            mFile.connect();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+    }
+
+    @Override
+    public void createNewFile() throws JcifsException {
+        try {
+            mFile.createNewFile();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public String getName() {
+        return mFile.getName();
+    }
+
+    @Override
+    public String getPath() {
+        return mFile.getPath();
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return mFile.getCanonicalPath();
+    }
+
+    @Override
+    public String getServer() {
+        return mFile.getServer();
+    }
+
+    @Override
+    public String getShare() {
+        return mFile.getShare();
+    }
+
+    @Override
+    public int getType() throws JcifsException {
+        try {
+            return mFile.getType();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public String getUncPath() {
+        return mFile.getUncPath();
+    }
+
+    @Override
+    public String getParent() {
+        return mFile.getParent();
+    }
+
+    @Override
+    public boolean canRead() throws JcifsException {
+        try {
+            return mFile.canRead();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean canWrite() throws JcifsException {
+        try {
+            return mFile.canWrite();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean isDirectory() throws JcifsException {
+        try {
+            return mFile.isDirectory();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean isFile() throws JcifsException {
+        try {
+            return mFile.isFile();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean isHidden() throws JcifsException {
+        try {
+            return mFile.isHidden();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public long length() throws JcifsException {
+        try {
+            return mFile.length();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public String[] list() throws JcifsException {
+        try {
+            return mFile.list();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public JcifsFile[] listFiles(JcifsAuth auth) throws JcifsException {
+        try {
+            // The SmbFile of each entry keeps the attributes of the enumeration response
+            jcifsng211.smb.SmbFile[] files = mFile.listFiles();
+            if (files == null) return null;
+            JcifsFile[] result = new JcifsFile[files.length];
+            for (int i = 0; i < files.length; i++) result[i] = new JcifsFile(files[i], auth);
+            return result;
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public void renameTo(JcifsFile d) throws JcifsException {
+        if (d.getSmb211File() == null) throw new JcifsException("Null SMB211 file specified.");
+        try {
+            mFile.renameTo(d.getSmb211File());
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public boolean isServerSideCopySupported() {
+        return false;
+    }
+
+    @Override
+    public void copyTo(JcifsFile d) throws JcifsException {
+        throw (new JcifsException("Server side copy is not supported by SMB211"));
+    }
+
+    @Override
+    public void setLastModified(long lm) throws JcifsException {
+        try {
+            mFile.setLastModified(lm);
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public long lastModified() throws JcifsException {
+        try {
+            return mFile.lastModified();
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public JcifsFileAttributes readAttributes() throws JcifsException {
+        try {
+            return JcifsFileAttributes.fromSmbFile(mFile);
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public JcifsFileAttributes loadAttributes() throws JcifsException {
+        // exists() keeps attributes and times of its query in the SmbFile, length() queries the size
+        return exists() ? readAttributes() : null;
+    }
+
+    @Override
+    public RandomAccess openRandomAccess(String mode) throws JcifsException {
+        try {
+            return new RandomAccessHandle(new jcifsng211.smb.SmbRandomAccessFile(mFile, mode));
+        } catch (jcifsng211.smb.SmbException e) {
+            throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+        }
+    }
+
+    @Override
+    public Children children(JcifsAuth auth) throws JcifsException {
+        try {
+            return new ChildIterator(mFile.children(), auth);
+        } catch (jcifsng211.CIFSException e) {
+            throw toJcifsException(e);
+        }
+    }
+
+    @Override
+    public Watch watch(int filter, boolean recursive) throws JcifsException {
+        try {
+            return new WatchHandle(mFile.watch(filter, recursive));
+        } catch (jcifsng211.CIFSException e) {
+            throw toJcifsException(e);
+        }
+    }
+
+    /**
+     * JcifsException of an exception of jcifs-ng 2.1.1, a RuntimeCIFSException is unwrapped to its cause
+     */
+    static JcifsException toJcifsException(Exception e) {
+        if (e instanceof RuntimeException && e.getCause() instanceof Exception) e = (Exception) e.getCause();
+        if (e instanceof jcifsng211.smb.SmbException)
+            return new JcifsException(e, ((jcifsng211.smb.SmbException) e).getNtStatus(), e.getCause());
+        return new JcifsException(e, 0, e.getCause());
+    }
+
+    private static final class RandomAccessHandle implements RandomAccess {
+        private final jcifsng211.smb.SmbRandomAccessFile mRaf;
+
+        RandomAccessHandle(jcifsng211.smb.SmbRandomAccessFile raf) {
+            mRaf = raf;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws JcifsException {
+            try {
+                return mRaf.read(buf, off, len);
+            } catch (jcifsng211.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws JcifsException {
+            try {
+                mRaf.write(buf, off, len);
+            } catch (jcifsng211.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public void seek(long pos) {
+            mRaf.seek(pos);
+        }
+
+        @Override
+        public long getFilePointer() {
+            return mRaf.getFilePointer();
+        }
+
+        @Override
+        public long length() throws JcifsException {
+            try {
+                return mRaf.length();
+            } catch (jcifsng211.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public void setLength(long new_length) throws JcifsException {
+            try {
+                mRaf.setLength(new_length);
+            } catch (jcifsng211.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+
+        @Override
+        public void close() throws JcifsException {
+            try {
+                mRaf.close();
+            } catch (jcifsng211.smb.SmbException e) {
+                throw (new JcifsException(e, e.getNtStatus(), e.getCause()));
+            }
+        }
+    }
+
+    private static final class ChildIterator implements Children {
+        private final jcifsng211.CloseableIterator<jcifsng211.SmbResource> mIterator;
+        private final JcifsAuth mAuth;
+
+        ChildIterator(jcifsng211.CloseableIterator<jcifsng211.SmbResource> iterator, JcifsAuth auth) {
+            mIterator = iterator;
+            mAuth = auth;
+        }
+
+        @Override
+        public JcifsFile next() throws JcifsException {
+            try {
+                if (!mIterator.hasNext()) return null;
+                return new JcifsFile((jcifsng211.smb.SmbFile) mIterator.next(), mAuth);
+            } catch (jcifsng211.RuntimeCIFSException e) {
+                throw toJcifsException(e);
+            }
+        }
+
+        @Override
+        public void close() throws JcifsException {
+            try {
+                mIterator.close();
+            } catch (jcifsng211.CIFSException e) {
+                throw toJcifsException(e);
+            }
+        }
+    }
+
+    private static final class WatchHandle implements Watch {
+        private final jcifsng211.SmbWatchHandle mHandle;
+
+        WatchHandle(jcifsng211.SmbWatchHandle handle) {
+            mHandle = handle;
+        }
+
+        @Override
+        public void nextEvents(JcifsFile dir, List<JcifsWatchEvent> events) throws JcifsException {
+            try {
+                for (jcifsng211.FileNotifyInformation info : mHandle.watch()) {
+                    events.add(JcifsWatchEvent.fromNotify(info.getAction(), info.getFileName(), dir));
+                }
+            } catch (jcifsng211.CIFSException e) {
+                throw toJcifsException(e);
+            }
+        }
+
+        @Override
+        public void close() throws JcifsException {
+            try {
+                mHandle.close();
+            } catch (jcifsng211.CIFSException e) {
+                throw toJcifsException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs {@link JcifsFile#statAll}. Worker threads take the next file from a shared index, so up to parallelism
+ * requests are in flight on the connection of each server at the same time.
+ */
+class JcifsStatBatch {
+    private final ArrayList<JcifsFile> mFiles;
+    private final JcifsFileAttributes[] mResult;
+    private final int mParallelism;
+    private final AtomicInteger mNextIndex = new AtomicInteger(0);
+    private final AtomicReference<JcifsException> mError = new AtomicReference<JcifsException>();
+
+    JcifsStatBatch(Collection<JcifsFile> files, int parallelism) {
+        mFiles = new ArrayList<JcifsFile>(files);
+        mResult = new JcifsFileAttributes[mFiles.size()];
+        mParallelism = parallelism;
+    }
+
+    JcifsFileAttributes[] run() throws JcifsException {
+        int thread_count = Math.max(1, Math.min(mParallelism, mFiles.size()));
+        if (thread_count == 1) {
+            new Worker().run();
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(thread_count, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread th = new Thread(r, "JcifsStatBatch-" + mCount.incrementAndGet());
+                    th.setDaemon(true);
+                    return th;
+                }
+            });
+            try {
+                for (int i = 0; i < thread_count; i++) pool.execute(new Worker());
+                pool.shutdown();
+                while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Wait for the workers
+                }
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new JcifsException("statAll was interrupted.");
+            }
+        }
+        JcifsException error = mError.get();
+        if (error != null) throw error;
+        return mResult;
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            int i;
+            while (mError.get() == null && (i = mNextIndex.getAndIncrement()) < mFiles.size()) {
+                try {
+                    mResult[i] = mFiles.get(i).stat();
+                } catch (JcifsException e) {
+                    mError.compareAndSet(null, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.nio.file.Path;
+
+/**
+ * One difference found by {@link JcifsSyncPlanner}. Changes describe what has to be done on the remote side
+ * to make it equal to the local side. Paths are relative to the roots and use "/" as separator.
+ */
+public class JcifsSyncChange {
+    public enum Type {
+        /** The local file or directory does not exist on the remote side */
+        ADD,
+        /** The file exists on both sides with a different size, last modified time or hash */
+        UPDATE,
+        /** The remote file or directory does not exist on the local side, a directory is reported once for its whole tree */
+        DELETE,
+        /** A remote file that does not exist locally has the same content as a new local file, getOldPath() is the remote path */
+        RENAME
+    }
+
+    private final Type mType;
+    private final String mPath;
+    private final String mOldPath;
+    private final boolean mDirectory;
+    private final Path mLocalFile;
+    private final JcifsFile mRemoteFile;
+    private final long mLength;
+    private final long mLastModified;
+
+    JcifsSyncChange(Type type, String path, String old_path, boolean directory, Path local_file, JcifsFile remote_file,
+                    long length, long last_modified) {
+        mType = type;
+        mPath = path;
+        mOldPath = old_path;
+        mDirectory = directory;
+        mLocalFile = local_file;
+        mRemoteFile = remote_file;
+        mLength = length;
+        mLastModified = last_modified;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return Relative path of the change, the new path for RENAME
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * @return Relative path of the existing remote file for RENAME, null for other types
+     */
+    public String getOldPath() {
+        return mOldPath;
+    }
+
+    public boolean isDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @return The local file, null for DELETE
+     */
+    public Path getLocalFile() {
+        return mLocalFile;
+    }
+
+    /**
+     * @return The existing remote file, null for ADD. For RENAME the file at getOldPath().
+     */
+    public JcifsFile getRemoteFile() {
+        return mRemoteFile;
+    }
+
+    /**
+     * @return Size of the local file, of the remote file for DELETE
+     */
+    public long length() {
+        return mLength;
+    }
+
+    /**
+     * @return Last modified time of the local file, of the remote file for DELETE
+     */
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    @Override
+    public String toString() {
+        if (mType == Type.RENAME) return mType + " " + mOldPath + " -> " + mPath;
+        return mType + " " + mPath;
+    }
+}
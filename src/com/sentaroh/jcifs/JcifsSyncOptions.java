@@ -0,0 +1,104 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+public class JcifsSyncOptions {
+    final static public int DEFAULT_PARALLELISM = 4;
+    final static public long DEFAULT_TIME_TOLERANCE = 2000L;
+    final static public int DEFAULT_MAX_RENAME_CANDIDATES = 10000;
+
+    private int mParallelism = DEFAULT_PARALLELISM;
+    private long mTimeTolerance = DEFAULT_TIME_TOLERANCE;
+    private boolean mCompareHash = false;
+    private boolean mDetectRename = false;
+    private int mMaxRenameCandidates = DEFAULT_MAX_RENAME_CANDIDATES;
+
+    public JcifsSyncOptions() {
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * @param parallelism Number of directories compared at the same time
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be 1 or more.");
+        mParallelism = parallelism;
+    }
+
+    public long getTimeTolerance() {
+        return mTimeTolerance;
+    }
+
+    /**
+     * @param tolerance Difference of last modified time in milliseconds that is still treated as equal.
+     *                  The default allows for the 2 second resolution of FAT volumes.
+     */
+    public void setTimeTolerance(long tolerance) {
+        if (tolerance < 0) throw new IllegalArgumentException("tolerance must be 0 or more.");
+        mTimeTolerance = tolerance;
+    }
+
+    public boolean isCompareHash() {
+        return mCompareHash;
+    }
+
+    /**
+     * @param compare_hash true reads both files when the size is equal but the last modified time differs,
+     *                     the file is reported as UPDATE only when the contents differ. Rename candidates are
+     *                     also confirmed by hash.
+     */
+    public void setCompareHash(boolean compare_hash) {
+        mCompareHash = compare_hash;
+    }
+
+    public boolean isDetectRename() {
+        return mDetectRename;
+    }
+
+    /**
+     * @param detect_rename true pairs a new local file with a vanished remote file of the same size and last modified time
+     *                      and reports a RENAME. ADD and DELETE of files are then held back as rename candidates until
+     *                      they pair, the candidates exceed getMaxRenameCandidates() or the walk completed.
+     *                      The default is false.
+     */
+    public void setDetectRename(boolean detect_rename) {
+        mDetectRename = detect_rename;
+    }
+
+    public int getMaxRenameCandidates() {
+        return mMaxRenameCandidates;
+    }
+
+    /**
+     * @param max_candidates Maximum number of ADD and of DELETE held back for rename detection. When more are held
+     *                       the oldest is reported as it is, so the memory does not grow with the tree.
+     */
+    public void setMaxRenameCandidates(int max_candidates) {
+        if (max_candidates < 1) throw new IllegalArgumentException("max_candidates must be 1 or more.");
+        mMaxRenameCandidates = max_candidates;
+    }
+}
@@ -0,0 +1,431 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compare a local directory tree with a remote directory tree and report the differences as {@link JcifsSyncChange}.
+ * The trees are compared one directory at a time, the local and the remote listing of a directory are read
+ * concurrently and several directories are compared in parallel. Only the listings of the directories in progress
+ * are held in memory, and up to getMaxRenameCandidates() rename candidates when rename detection is enabled.
+ * <p>
+ * Files are equal when the size is equal and the last modified time differs no more than the tolerance,
+ * optionally confirmed by a SHA-256 hash of both contents.
+ */
+public class JcifsSyncPlanner {
+    private final Path mLocalRoot;
+    private final JcifsFile mRemoteRoot;
+    private final JcifsSyncOptions mOptions;
+
+    private JcifsSyncListener mListener = null;
+    private final Object mListenerLock = new Object();
+    private final AtomicReference<JcifsException> mAbortCause = new AtomicReference<JcifsException>();
+
+    private final Object mRenameLock = new Object();
+    private final PendingChanges mPendingAdd = new PendingChanges();
+    private final PendingChanges mPendingDelete = new PendingChanges();
+
+    public JcifsSyncPlanner(Path local_root, JcifsFile remote_root) {
+        this(local_root, remote_root, null);
+    }
+
+    /**
+     * @param local_root  Local directory
+     * @param remote_root Remote directory, if it does not exist every local entry is reported as ADD
+     * @param options     Parallelism, time tolerance, hash and rename detection, null is use default
+     */
+    public JcifsSyncPlanner(Path local_root, JcifsFile remote_root, JcifsSyncOptions options) {
+        mLocalRoot = local_root;
+        mRemoteRoot = remote_root;
+        mOptions = options == null ? new JcifsSyncOptions() : options;
+    }
+
+    /**
+     * Compare the trees and pass each difference to the listener. A planner can be used once.
+     *
+     * @param listener Receives the changes
+     * @throws JcifsException The first listing, hash or listener error, the comparison is stopped
+     */
+    public void plan(JcifsSyncListener listener) throws JcifsException {
+        if (listener == null) throw new JcifsException("JcifsSyncListener is null.");
+        if (mListener != null) throw new JcifsException("JcifsSyncPlanner was already used.");
+        mListener = listener;
+        if (!Files.isDirectory(mLocalRoot)) throw new JcifsException("Local root is not a directory. path=" + mLocalRoot);
+        JcifsFile remote_root = mRemoteRoot.exists() ? mRemoteRoot : null;
+        if (remote_root != null && !remote_root.isDirectory())
+            throw new JcifsException("Remote root is not a directory. path=" + mRemoteRoot.getPath());
+
+        ForkJoinPool pool = new ForkJoinPool(mOptions.getParallelism());
+        try {
+            pool.invoke(new DirectoryTask("", mLocalRoot, remote_root));
+        } finally {
+            pool.shutdown();
+        }
+        JcifsException cause = mAbortCause.get();
+        if (cause != null) throw cause;
+        flushPendingChanges();
+    }
+
+    private boolean isAborted() {
+        return mAbortCause.get() != null;
+    }
+
+    private void abort(JcifsException e) {
+        mAbortCause.compareAndSet(null, e);
+    }
+
+    private void emit(JcifsSyncChange change) throws JcifsException {
+        synchronized (mListenerLock) {
+            if (isAborted()) return;
+            mListener.onChange(change);
+        }
+    }
+
+    private void flushPendingChanges() throws JcifsException {
+        ArrayList<JcifsSyncChange> rest = new ArrayList<JcifsSyncChange>();
+        synchronized (mRenameLock) {
+            mPendingDelete.drainTo(rest);
+            mPendingAdd.drainTo(rest);
+        }
+        Collections.sort(rest, new Comparator<JcifsSyncChange>() {
+            @Override
+            public int compare(JcifsSyncChange c1, JcifsSyncChange c2) {
+                if (c1.getType() != c2.getType()) return c1.getType().compareTo(c2.getType());
+                return c1.getPath().compareTo(c2.getPath());
+            }
+        });
+        for (JcifsSyncChange change : rest) emit(change);
+    }
+
+    /**
+     * Rename candidates of one kind by size, in the order they were found
+     */
+    private static class PendingChanges {
+        private final HashMap<Long, ArrayList<JcifsSyncChange>> mBySize = new HashMap<Long, ArrayList<JcifsSyncChange>>();
+        private final LinkedHashSet<JcifsSyncChange> mOrder = new LinkedHashSet<JcifsSyncChange>();
+
+        void add(JcifsSyncChange change) {
+            ArrayList<JcifsSyncChange> list = mBySize.get(change.length());
+            if (list == null) {
+                list = new ArrayList<JcifsSyncChange>();
+                mBySize.put(change.length(), list);
+            }
+            list.add(change);
+            mOrder.add(change);
+        }
+
+        boolean contains(JcifsSyncChange change) {
+            return mOrder.contains(change);
+        }
+
+        boolean remove(JcifsSyncChange change) {
+            if (!mOrder.remove(change)) return false;
+            ArrayList<JcifsSyncChange> list = mBySize.get(change.length());
+            list.remove(change);
+            if (list.isEmpty()) mBySize.remove(change.length());
+            return true;
+        }
+
+        List<JcifsSyncChange> get(long length) {
+            ArrayList<JcifsSyncChange> list = mBySize.get(length);
+            return list == null ? Collections.<JcifsSyncChange>emptyList() : list;
+        }
+
+        void evictTo(int max_size, List<JcifsSyncChange> evicted) {
+            while (mOrder.size() > max_size) {
+                JcifsSyncChange eldest = mOrder.iterator().next();
+                remove(eldest);
+                evicted.add(eldest);
+            }
+        }
+
+        void drainTo(List<JcifsSyncChange> list) {
+            list.addAll(mOrder);
+            mOrder.clear();
+            mBySize.clear();
+        }
+    }
+
+    private void addFile(JcifsSyncChange add) throws JcifsException {
+        if (!mOptions.isDetectRename()) emit(add);
+        else pairFile(add, true);
+    }
+
+    private void deleteFile(JcifsSyncChange del) throws JcifsException {
+        if (!mOptions.isDetectRename()) emit(del);
+        else pairFile(del, false);
+    }
+
+    /**
+     * Report a RENAME if a candidate of the other kind matches, otherwise hold the change back as a candidate.
+     * Candidates evicted by the limit are reported as they are. With hash comparison the contents are read
+     * outside the lock, the change is held back meanwhile so a counterpart found concurrently pairs with it.
+     */
+    private void pairFile(JcifsSyncChange change, boolean change_is_add) throws JcifsException {
+        PendingChanges own = change_is_add ? mPendingAdd : mPendingDelete;
+        PendingChanges other = change_is_add ? mPendingDelete : mPendingAdd;
+        ArrayList<JcifsSyncChange> candidates = new ArrayList<JcifsSyncChange>();
+        ArrayList<JcifsSyncChange> evicted = new ArrayList<JcifsSyncChange>();
+        JcifsSyncChange rename = null;
+        synchronized (mRenameLock) {
+            for (JcifsSyncChange candidate : other.get(change.length())) {
+                if (isSameTime(candidate.getLastModified(), change.getLastModified())) candidates.add(candidate);
+            }
+            if (!mOptions.isCompareHash() && candidates.size() > 0) {
+                JcifsSyncChange candidate = candidates.get(0);
+                other.remove(candidate);
+                rename = change_is_add ? createRename(change, candidate) : createRename(candidate, change);
+            } else {
+                own.add(change);
+                own.evictTo(mOptions.getMaxRenameCandidates(), evicted);
+            }
+        }
+        for (JcifsSyncChange e : evicted) emit(e);
+        if (rename == null && mOptions.isCompareHash()) rename = pairByContent(change, change_is_add, own, other, candidates);
+        if (rename != null) emit(rename);
+    }
+
+    private JcifsSyncChange pairByContent(JcifsSyncChange change, boolean change_is_add, PendingChanges own,
+                                          PendingChanges other, List<JcifsSyncChange> candidates) throws JcifsException {
+        for (JcifsSyncChange candidate : candidates) {
+            JcifsSyncChange add = change_is_add ? change : candidate;
+            JcifsSyncChange del = change_is_add ? candidate : change;
+            if (!isSameContent(add.getLocalFile(), del.getRemoteFile())) continue;
+            synchronized (mRenameLock) {
+                // Paired by another worker or evicted meanwhile
+                if (!own.contains(change)) return null;
+                if (!other.remove(candidate)) continue;
+                own.remove(change);
+                return createRename(add, del);
+            }
+        }
+        return null;
+    }
+
+    private static JcifsSyncChange createRename(JcifsSyncChange add, JcifsSyncChange del) {
+        return new JcifsSyncChange(JcifsSyncChange.Type.RENAME, add.getPath(), del.getPath(), false,
+                add.getLocalFile(), del.getRemoteFile(), add.length(), add.getLastModified());
+    }
+
+    private boolean isSameTime(long t1, long t2) {
+        return Math.abs(t1 - t2) <= mOptions.getTimeTolerance();
+    }
+
+    private boolean isSameContent(Path local, JcifsFile remote) throws JcifsException {
+        byte[] buf = JcifsBufferPool.acquire(remote.getReadBufferSize());
+        try {
+            MessageDigest local_md = MessageDigest.getInstance("SHA-256");
+            MessageDigest remote_md = MessageDigest.getInstance("SHA-256");
+            InputStream is = Files.newInputStream(local);
+            try {
+                int n;
+                while ((n = is.read(buf)) > 0) local_md.update(buf, 0, n);
+            } finally {
+                is.close();
+            }
+            is = remote.getInputStream();
+            try {
+                int n;
+                while ((n = is.read(buf)) > 0) remote_md.update(buf, 0, n);
+            } finally {
+                is.close();
+            }
+            return Arrays.equals(local_md.digest(), remote_md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        } finally {
+            JcifsBufferPool.release(buf);
+        }
+    }
+
+    private static String childPath(String rel, String name) {
+        return rel.length() == 0 ? name : rel + "/" + name;
+    }
+
+    private static class LocalEntry {
+        final Path path;
+        final BasicFileAttributes attributes;
+
+        LocalEntry(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+    }
+
+    private static TreeMap<String, LocalEntry> listLocal(Path dir) throws JcifsException {
+        TreeMap<String, LocalEntry> result = new TreeMap<String, LocalEntry>();
+        try {
+            DirectoryStream<Path> ds = Files.newDirectoryStream(dir);
+            try {
+                for (Path child : ds) {
+                    result.put(child.getFileName().toString(), new LocalEntry(child, Files.readAttributes(child, BasicFileAttributes.class)));
+                }
+            } finally {
+                ds.close();
+            }
+        } catch (IOException e) {
+            throw (new JcifsException(e, 0, e.getCause()));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("serial")
+    private static class RemoteListTask extends RecursiveTask<TreeMap<String, JcifsFile>> {
+        private final JcifsFile mDir;
+        private JcifsException mError = null;
+
+        RemoteListTask(JcifsFile dir) {
+            mDir = dir;
+        }
+
+        @Override
+        protected TreeMap<String, JcifsFile> compute() {
+            TreeMap<String, JcifsFile> result = new TreeMap<String, JcifsFile>();
+            try {
+                JcifsFileIterator it = mDir.children();
+                try {
+                    while (it.hasNext()) {
+                        JcifsFile child = it.next();
+                        String name = child.getName();
+                        if (name.endsWith("/")) name = name.substring(0, name.length() - 1);
+                        result.put(name, child);
+                    }
+                } finally {
+                    it.close();
+                }
+            } catch (JcifsException e) {
+                mError = e;
+            }
+            return result;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction {
+        private final String mRelPath;
+        private final Path mLocalDir;
+        private final JcifsFile mRemoteDir;
+
+        DirectoryTask(String rel_path, Path local_dir, JcifsFile remote_dir) {
+            mRelPath = rel_path;
+            mLocalDir = local_dir;
+            mRemoteDir = remote_dir;
+        }
+
+        @Override
+        protected void compute() {
+            if (isAborted()) return;
+            try {
+                RemoteListTask remote_task = null;
+                if (mRemoteDir != null) {
+                    remote_task = new RemoteListTask(mRemoteDir);
+                    remote_task.fork();
+                }
+                TreeMap<String, LocalEntry> local_map = listLocal(mLocalDir);
+                TreeMap<String, JcifsFile> remote_map = new TreeMap<String, JcifsFile>();
+                if (remote_task != null) {
+                    remote_map = remote_task.join();
+                    if (remote_task.mError != null) throw remote_task.mError;
+                }
+
+                ArrayList<DirectoryTask> sub_tasks = new ArrayList<DirectoryTask>();
+                for (Map.Entry<String, LocalEntry> item : local_map.entrySet()) {
+                    if (isAborted()) return;
+                    String rel = childPath(mRelPath, item.getKey());
+                    LocalEntry local = item.getValue();
+                    JcifsFile remote = remote_map.remove(item.getKey());
+                    if (remote != null && remote.isDirectory() != local.attributes.isDirectory()) {
+                        removeRemote(rel, remote);
+                        remote = null;
+                    }
+                    if (local.attributes.isDirectory()) {
+                        if (remote == null) {
+                            emit(new JcifsSyncChange(JcifsSyncChange.Type.ADD, rel, null, true, local.path, null,
+                                    0, local.attributes.lastModifiedTime().toMillis()));
+                        }
+                        sub_tasks.add(new DirectoryTask(rel, local.path, remote));
+                    } else if (remote == null) {
+                        addFile(new JcifsSyncChange(JcifsSyncChange.Type.ADD, rel, null, false, local.path, null,
+                                local.attributes.size(), local.attributes.lastModifiedTime().toMillis()));
+                    } else {
+                        compareFile(rel, local, remote);
+                    }
+                }
+                for (Map.Entry<String, JcifsFile> item : remote_map.entrySet()) {
+                    if (isAborted()) return;
+                    removeRemote(childPath(mRelPath, item.getKey()), item.getValue());
+                }
+                if (sub_tasks.size() > 0) invokeAll(sub_tasks);
+            } catch (JcifsException e) {
+                abort(e);
+            }
+        }
+
+        private void removeRemote(String rel, JcifsFile remote) throws JcifsException {
+            if (remote.isDirectory()) {
+                emit(new JcifsSyncChange(JcifsSyncChange.Type.DELETE, rel, null, true, null, remote,
+                        0, remote.getLastModified()));
+            } else {
+                deleteFile(new JcifsSyncChange(JcifsSyncChange.Type.DELETE, rel, null, false, null, remote,
+                        remote.length(), remote.getLastModified()));
+            }
+        }
+
+        private void compareFile(String rel, LocalEntry local, JcifsFile remote) throws JcifsException {
+            long local_length = local.attributes.size();
+            long local_time = local.attributes.lastModifiedTime().toMillis();
+            boolean changed = local_length != remote.length();
+            if (!changed && !isSameTime(local_time, remote.getLastModified())) {
+                changed = !mOptions.isCompareHash() || !isSameContent(local.path, remote);
+            }
+            if (changed) {
+                emit(new JcifsSyncChange(JcifsSyncChange.Type.UPDATE, rel, null, false, local.path, remote,
+                        local_length, local_time));
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+/**
+ * Receives the start and the end of each operation of JcifsFile and of the lookups of JcifsUtil, for tracing
+ * tools that need the operation on the timeline of its thread, like JDK Flight Recorder. Installed for the
+ * whole process by {@link JcifsFile#setTracer}. Calls are made on the thread of the operation.
+ * <p>
+ * Operations use the codes of {@link JcifsMetrics}. Stream reads and writes are one operation per call.
+ */
+public interface JcifsTracer {
+    /**
+     * Called before the operation
+     *
+     * @param operation JcifsMetrics.OP_xxx
+     * @param smb_level JCIFS_FILE_SMBxxx, 0 for lookups without a level
+     * @param url       URL of the file, host name or address of a lookup
+     * @return Span passed to end(), null if the operation is not traced. end() is not called for null.
+     */
+    Object begin(int operation, int smb_level, String url);
+
+    /**
+     * Called after the operation
+     *
+     * @param span      Returned by begin()
+     * @param success   false if the operation threw or a lookup found nothing
+     * @param bytes     Bytes moved by a stream read or write, 0 for other operations
+     * @param nt_status NT status of the error, 0 on success or if the error has none
+     */
+    void end(Object span, boolean success, long bytes, int nt_status);
+}
@@ -0,0 +1,86 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+public class JcifsTransferOptions {
+    final static public int DEFAULT_PARALLELISM = 4;
+    final static public int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    final static public int DEFAULT_RETRY_COUNT = 3;
+
+    private int mParallelism = DEFAULT_PARALLELISM;
+    private int mChunkSize = DEFAULT_CHUNK_SIZE;
+    private int mRetryCount = DEFAULT_RETRY_COUNT;
+    private JcifsTransferListener mListener = null;
+
+    public JcifsTransferOptions() {
+    }
+
+    public JcifsTransferOptions(int parallelism) {
+        setParallelism(parallelism);
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * @param parallelism Number of ranges transferred at the same time, each over its own file handle
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be 1 or more.");
+        mParallelism = parallelism;
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    /**
+     * @param chunk_size Size of a range, a failed range is retried from its start
+     */
+    public void setChunkSize(int chunk_size) {
+        if (chunk_size < 1) throw new IllegalArgumentException("chunk_size must be 1 or more.");
+        mChunkSize = chunk_size;
+    }
+
+    public int getRetryCount() {
+        return mRetryCount;
+    }
+
+    /**
+     * @param retry_count Number of retries of a failed range, the file handle is reopened before a retry
+     */
+    public void setRetryCount(int retry_count) {
+        if (retry_count < 0) throw new IllegalArgumentException("retry_count must be 0 or more.");
+        mRetryCount = retry_count;
+    }
+
+    public JcifsTransferListener getListener() {
+        return mListener;
+    }
+
+    public void setListener(JcifsTransferListener listener) {
+        mListener = listener;
+    }
+}
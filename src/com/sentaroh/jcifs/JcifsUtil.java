@@ -28,6 +28,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +69,14 @@ public class JcifsUtil {
     }
 
     final static public String getSmbHostIpAddressByHostName(int smb_level, String hn) {
+        JcifsTracer tracer = JcifsFile.getTracer();
+        Object span = tracer == null ? null : tracer.begin(JcifsMetrics.OP_RESOLVE_NAME, smb_level, hn);
+        String result = getSmbHostIpAddressFromName(smb_level, hn);
+        if (span != null) tracer.end(span, result != null, 0, 0);
+        return result;
+    }
+
+    final static private String getSmbHostIpAddressFromName(int smb_level, String hn) {
         if (smb_level==JcifsAuth.JCIFS_FILE_SMB1) {
             return getSmbHostIpAddressFromNameSmb1(hn);
         } else if (smb_level==JcifsAuth.JCIFS_FILE_SMB201) {
@@ -157,6 +166,14 @@ public class JcifsUtil {
     }
 
     final static public boolean isIpAddressAndPortConnected(String address, int port, int timeout) {
+        JcifsTracer tracer = JcifsFile.getTracer();
+        Object span = tracer == null ? null : tracer.begin(JcifsMetrics.OP_PORT_CHECK, 0, address + ":" + port);
+        boolean reachable = isIpAddressAndPortReachable(address, port, timeout);
+        if (span != null) tracer.end(span, reachable, 0, 0);
+        return reachable;
+    }
+
+    final static private boolean isIpAddressAndPortReachable(String address, int port, int timeout) {
         boolean reachable = false;
         Socket socket = new Socket();
         try {
@@ -173,6 +190,14 @@ public class JcifsUtil {
     }
 
     final static public String getSmbHostNameByAddress(int smb_level, String address) {
+        JcifsTracer tracer = JcifsFile.getTracer();
+        Object span = tracer == null ? null : tracer.begin(JcifsMetrics.OP_RESOLVE_ADDRESS, smb_level, address);
+        String result = getSmbHostNameFromAddress(smb_level, address);
+        if (span != null) tracer.end(span, result != null && result.length() > 0, 0, 0);
+        return result;
+    }
+
+    final static private String getSmbHostNameFromAddress(int smb_level, String address) {
         if (smb_level==JcifsAuth.JCIFS_FILE_SMB1) {
             return getSmbHostNameFromAddressSmb1(address);
         } else if (smb_level==JcifsAuth.JCIFS_FILE_SMB201) {
@@ -315,6 +340,14 @@ public class JcifsUtil {
     }
 
     final static public boolean isNetbiosAddress(int smb_level, String address) {
+        JcifsTracer tracer = JcifsFile.getTracer();
+        Object span = tracer == null ? null : tracer.begin(JcifsMetrics.OP_NETBIOS_STATUS, smb_level, address);
+        boolean result = isNbtAddressActive(smb_level, address);
+        if (span != null) tracer.end(span, result, 0, 0);
+        return result;
+    }
+
+    final static private boolean isNbtAddressActive(int smb_level, String address) {
         if (smb_level==JcifsAuth.JCIFS_FILE_SMB1) {
             return isNbtAddressActiveSmb1(address);
         } else if (smb_level==JcifsAuth.JCIFS_FILE_SMB201) {
@@ -406,6 +439,49 @@ public class JcifsUtil {
         return result;
     }
 
+    /**
+     * Find the newest SMB level the server accepts, see {@link #detectBestSmbLevel(String, String, String, String, Properties)}.
+     * The probes connect as anonymous user.
+     */
+    final static public int detectBestSmbLevel(String host) {
+        return JcifsLevelDetector.detect(host, null, null, null, null);
+    }
+
+    /**
+     * Find the newest SMB level the server accepts. SMB214, which negotiates SMB 2.0.2 to 3.1.1, and SMB1 are probed
+     * concurrently and the newer level whose negotiate succeeds is returned, so the detection takes about one connect.
+     * A session setup refused for the user still counts as success of the level. The result is cached per host, see
+     * {@link #setSmbLevelCacheTtl(long)}, a host that could not be reached with any level for at most 30 seconds.
+     *
+     * @param host   Server name or address, with ":port" if not 445
+     * @param domain A domain name
+     * @param user   A user name, null is anonymous
+     * @param pass   A password for user
+     * @param prop   jcifs option property of the probes, null is use default
+     * @return JCIFS_FILE_SMBxxx, 0 if the server could not be reached with any level
+     */
+    final static public int detectBestSmbLevel(String host, String domain, String user, String pass, Properties prop) {
+        return JcifsLevelDetector.detect(host, domain, user, pass, prop);
+    }
+
+    /**
+     * @param ttl Time in milliseconds a detected level is reused for the host, 0 disables the cache. The default is 10 minutes.
+     */
+    final static public void setSmbLevelCacheTtl(long ttl) {
+        JcifsLevelDetector.setCacheTtl(ttl);
+    }
+
+    final static public long getSmbLevelCacheTtl() {
+        return JcifsLevelDetector.getCacheTtl();
+    }
+
+    /**
+     * Forget the detected levels, e.g. after a server was reconfigured
+     */
+    final static public void clearSmbLevelCache() {
+        JcifsLevelDetector.clearCache();
+    }
+
     final static public String[] analyzeNtStatusCode(JcifsException e, String url, String user) {
         String[] result = new String[4];
 
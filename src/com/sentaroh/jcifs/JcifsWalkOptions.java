@@ -0,0 +1,74 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+public class JcifsWalkOptions {
+    final static public int DEFAULT_PARALLELISM = 8;
+    final static public int DEFAULT_MAX_LISTINGS_PER_SERVER = 4;
+
+    private int mParallelism = DEFAULT_PARALLELISM;
+    private int mMaxListingsPerServer = DEFAULT_MAX_LISTINGS_PER_SERVER;
+    private int mMaxDepth = Integer.MAX_VALUE;
+
+    public JcifsWalkOptions() {
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * @param parallelism Number of walker threads
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be 1 or more.");
+        mParallelism = parallelism;
+    }
+
+    public int getMaxListingsPerServer() {
+        return mMaxListingsPerServer;
+    }
+
+    /**
+     * @param max_listings Maximum number of directory listings in flight for each server. The limit applies
+     *                     to one walk, walks running at the same time each have their own limit.
+     */
+    public void setMaxListingsPerServer(int max_listings) {
+        if (max_listings < 1) throw new IllegalArgumentException("max_listings must be 1 or more.");
+        mMaxListingsPerServer = max_listings;
+    }
+
+    public int getMaxDepth() {
+        return mMaxDepth;
+    }
+
+    /**
+     * @param max_depth Depth of directories to be listed, 0 is the start directory only.
+     *                  Directories below the limit are passed to visitFile().
+     */
+    public void setMaxDepth(int max_depth) {
+        if (max_depth < 0) throw new IllegalArgumentException("max_depth must be 0 or more.");
+        mMaxDepth = max_depth;
+    }
+}
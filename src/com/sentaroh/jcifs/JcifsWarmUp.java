@@ -0,0 +1,148 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background connect and keep-alive of {@link JcifsAuth#warmUp}. The first request to a server pays name
+ * resolution, TCP connect, negotiate, session setup and tree connect; the warm-up does them on a daemon thread
+ * so the transport and session are in the pool of the CIFSContext when the application needs them.
+ * <p>
+ * jcifs closes a transport that had no traffic for soTimeout, and the server drops idle sessions too, so each
+ * warmed share is queried at the keep-alive interval. The query is a file system size request on the share root,
+ * the cheapest request the public API sends, and it keeps the tree connect in use as well as the session.
+ * A failed keep-alive is only logged, the next one reconnects. Without shares there is no tree to query, the
+ * keep-alive of the server only reconnects after jcifs closed the transport.
+ */
+final class JcifsWarmUp {
+    private static final Logger log = LoggerFactory.getLogger(JcifsWarmUp.class);
+
+    final static private int MAX_THREADS = 4;
+
+    private final JcifsAuth mAuth;
+    private final ScheduledThreadPoolExecutor mExecutor;
+    private final HashSet<String> mHosts = new HashSet<String>();
+
+    JcifsWarmUp(JcifsAuth auth) {
+        mAuth = auth;
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread th = new Thread(r);
+                th.setName("JcifsWarmUp");
+                th.setDaemon(true);
+                return th;
+            }
+        });
+        mExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        mExecutor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * @param keep_alive_millis Interval of the keep-alive, 0 is connect only
+     * @return Completed when all shares are connected
+     */
+    CompletableFuture<Void> start(String host, String[] shares, long keep_alive_millis) {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        final ArrayList<String> urls = new ArrayList<String>();
+        if (shares == null || shares.length == 0) {
+            urls.add("smb://" + host + "/");
+        } else {
+            for (String share : shares) urls.add("smb://" + host + "/" + trimShare(share) + "/");
+        }
+        final boolean server_only = shares == null || shares.length == 0;
+        synchronized (mHosts) {
+            // One thread per host, so an unreachable server does not hold up the others
+            if (mHosts.add(host.toLowerCase()) && mExecutor.getCorePoolSize() < Math.min(mHosts.size(), MAX_THREADS)) {
+                mExecutor.setCorePoolSize(Math.min(mHosts.size(), MAX_THREADS));
+            }
+        }
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (String url : urls) new JcifsFile(url, mAuth).connect();
+                        future.complete(null);
+                    } catch (JcifsException e) {
+                        future.completeExceptionally(e);
+                    } catch (MalformedURLException e) {
+                        future.completeExceptionally(new JcifsException(e, 0, e.getCause()));
+                    }
+                }
+            });
+            if (keep_alive_millis > 0) {
+                mExecutor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (String url : urls) keepAlive(url, server_only);
+                    }
+                }, keep_alive_millis, keep_alive_millis, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new JcifsException("JcifsAuth is closed."));
+        }
+        return future;
+    }
+
+    private static String trimShare(String share) {
+        String name = share;
+        while (name.startsWith("/")) name = name.substring(1);
+        while (name.endsWith("/")) name = name.substring(0, name.length() - 1);
+        return name;
+    }
+
+    private void keepAlive(String url, boolean server_only) {
+        try {
+            JcifsFile file = new JcifsFile(url, mAuth);
+            if (server_only) file.connect();
+            else file.keepAlive();
+        } catch (JcifsException e) {
+            log.debug("keepAlive " + url + " failed", e);
+        } catch (MalformedURLException e) {
+            log.debug("keepAlive " + url + " failed", e);
+        } catch (RuntimeException e) {
+            // A periodic task that throws is not run again
+            log.error("keepAlive " + url + " RuntimeException", e);
+        }
+    }
+
+    /**
+     * Stop the keep-alive, a connect in progress is abandoned
+     */
+    void stop() {
+        mExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,80 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+/**
+ * A change reported by a directory watch, see {@link JcifsFile#watch}.
+ */
+public class JcifsWatchEvent {
+    /** The server dropped events because too many changes happened at once, the directory should be listed again */
+    final static public int ACTION_OVERFLOW = 0;
+    final static public int ACTION_ADDED = 1;
+    final static public int ACTION_REMOVED = 2;
+    final static public int ACTION_MODIFIED = 3;
+    final static public int ACTION_RENAMED_OLD_NAME = 4;
+    final static public int ACTION_RENAMED_NEW_NAME = 5;
+
+    private final int mAction;
+    private final String mFileName;
+    private final JcifsFile mDirectory;
+
+    JcifsWatchEvent(int action, String file_name, JcifsFile directory) {
+        mAction = action;
+        mFileName = file_name;
+        mDirectory = directory;
+    }
+
+    /**
+     * Event of a FILE_NOTIFY_INFORMATION entry, the server separates the path with "\"
+     */
+    static JcifsWatchEvent fromNotify(int action, String file_name, JcifsFile directory) {
+        return new JcifsWatchEvent(action, file_name == null ? null : file_name.replace('\\', '/'), directory);
+    }
+
+    /**
+     * @return ACTION_xxx, values not defined here are passed as sent by the server
+     */
+    public int getAction() {
+        return mAction;
+    }
+
+    /**
+     * @return Path relative to the watched directory with "/" as separator, null for ACTION_OVERFLOW
+     */
+    public String getFileName() {
+        return mFileName;
+    }
+
+    /**
+     * @return The watched directory
+     */
+    public JcifsFile getDirectory() {
+        return mDirectory;
+    }
+
+    @Override
+    public String toString() {
+        return "action=" + mAction + ", name=" + mFileName;
+    }
+}
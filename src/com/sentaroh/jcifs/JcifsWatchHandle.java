@@ -0,0 +1,151 @@
+package com.sentaroh.jcifs;
+
+/*
+The MIT License (MIT)
+Copyright (c) 2018 Sentaroh
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software,
+and to permit persons to whom the Software is furnished to do so, subject to
+the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or
+substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A running directory watch, returned by {@link JcifsFile#watch}. A watch thread keeps one SMB2 CHANGE_NOTIFY
+ * request outstanding and hands the responses to a single delivery thread through a bounded queue.
+ * When the queue is full the watch thread waits, so a slow listener delays the next notify request instead of
+ * buffering without limit; the server then reports ACTION_OVERFLOW if it dropped changes meanwhile.
+ * Close the handle to cancel the outstanding request and stop both threads.
+ */
+public class JcifsWatchHandle implements AutoCloseable {
+    final static private int EVENT_QUEUE_SIZE = 256;
+
+    private final JcifsFile mDir;
+    private final JcifsWatchListener mListener;
+    private final ThreadPoolExecutor mExecutor;
+    private final Thread mWatchThread;
+    private volatile boolean mClosed = false;
+
+    private final JcifsFileBackend.Watch mWatch;
+
+    JcifsWatchHandle(JcifsFile dir, int filter, boolean recursive, JcifsWatchListener listener) throws JcifsException {
+        mDir = dir;
+        mListener = listener;
+        mWatch = dir.getBackend().watch(filter, recursive);
+
+        mExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(EVENT_QUEUE_SIZE),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread th = new Thread(r);
+                        th.setName("JcifsWatchListener");
+                        th.setDaemon(true);
+                        return th;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) return;
+                        try {
+                            executor.getQueue().put(r);
+                        } catch (InterruptedException e) {
+                            throw new RejectedExecutionException(e);
+                        }
+                    }
+                });
+        mWatchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchLoop();
+            }
+        });
+        mWatchThread.setName("JcifsWatch");
+        mWatchThread.setDaemon(true);
+        mWatchThread.start();
+    }
+
+    private void watchLoop() {
+        try {
+            while (!mClosed) {
+                final List<JcifsWatchEvent> events;
+                try {
+                    events = nextEvents();
+                } catch (final JcifsException e) {
+                    if (!mClosed) {
+                        mExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                mListener.onError(e);
+                            }
+                        });
+                    }
+                    return;
+                }
+                if (mClosed) return;
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mClosed) mListener.onEvents(events);
+                    }
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            // Closed while waiting for the queue
+        } finally {
+            mExecutor.shutdown();
+        }
+    }
+
+    private List<JcifsWatchEvent> nextEvents() throws JcifsException {
+        ArrayList<JcifsWatchEvent> events = new ArrayList<JcifsWatchEvent>();
+        mWatch.nextEvents(mDir, events);
+        if (events.isEmpty()) events.add(new JcifsWatchEvent(JcifsWatchEvent.ACTION_OVERFLOW, null, mDir));
+        return events;
+    }
+
+    public JcifsFile getDirectory() {
+        return mDir;
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Stop the watch. Events not yet delivered are discarded.
+     */
+    @Override
+    public void close() throws JcifsException {
+        if (mClosed) return;
+        mClosed = true;
+        try {
+            mWatch.close();
+        } finally {
+            mWatchThread.interrupt();
+            mExecutor.shutdownNow();
+        }
+    }
+}